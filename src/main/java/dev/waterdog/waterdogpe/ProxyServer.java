@@ -27,9 +27,15 @@ import dev.waterdog.waterdogpe.event.defaults.ProxyStartEvent;
 import dev.waterdog.waterdogpe.logger.MainLogger;
 import dev.waterdog.waterdogpe.network.ProxyListener;
 import dev.waterdog.waterdogpe.network.ServerInfo;
+import dev.waterdog.waterdogpe.network.bridge.BatchStats;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolConstants;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
+import dev.waterdog.waterdogpe.network.rewrite.ChunkRewriteCache;
+import dev.waterdog.waterdogpe.network.session.CompressionController;
+import dev.waterdog.waterdogpe.network.session.DownstreamClientPool;
+import dev.waterdog.waterdogpe.network.upstream.LoginVerifier;
 import dev.waterdog.waterdogpe.packs.PackManager;
+import dev.waterdog.waterdogpe.player.ChainVerificationCache;
 import dev.waterdog.waterdogpe.player.PlayerManager;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
 import dev.waterdog.waterdogpe.plugin.PluginManager;
@@ -41,6 +47,8 @@ import dev.waterdog.waterdogpe.utils.ProxyConfig;
 import dev.waterdog.waterdogpe.utils.types.ProxyListenerInterface;
 import dev.waterdog.waterdogpe.utils.config.ServerList;
 import dev.waterdog.waterdogpe.utils.types.*;
+import io.netty.channel.EventLoop;
+import io.netty.channel.epoll.Epoll;
 import lombok.SneakyThrows;
 import net.cubespace.Yamler.Config.InvalidConfigurationException;
 
@@ -66,6 +74,13 @@ public class ProxyServer {
     private final PluginManager pluginManager;
     private final EventManager eventManager;
     private final PackManager packManager;
+    private final ChunkRewriteCache chunkRewriteCache;
+    private final ExecutorService chunkRewriteExecutor;
+    private final LoginVerifier loginVerifier;
+    private final ChainVerificationCache chainVerificationCache;
+    private final BatchStats batchStats = new BatchStats();
+    private CompressionController compressionController;
+    private final DownstreamClientPool downstreamClientPool;
     private final ServerList serverInfoMap;
     private final ConsoleCommandSender commandSender;
     private final ScheduledExecutorService tickExecutor;
@@ -125,6 +140,25 @@ public class ProxyServer {
         this.playerManager = new PlayerManager(this);
         this.eventManager = new EventManager(this);
         this.packManager = new PackManager(this);
+        this.chunkRewriteCache = new ChunkRewriteCache(this.getConfiguration().getChunkCacheSize() * 1024L * 1024L);
+
+        this.downstreamClientPool = new DownstreamClientPool(this, this.getConfiguration().getDownstreamClientPoolSize());
+
+        int chunkRewriteThreads = this.getConfiguration().getChunkRewriteThreads();
+        if (chunkRewriteThreads > 0) {
+            ThreadFactoryBuilder chunkBuilder = new ThreadFactoryBuilder();
+            chunkBuilder.setNameFormat("WaterdogChunk Executor #%d");
+            chunkBuilder.setDaemon(true);
+            // Rewrite chunks on caller thread if the queue is full
+            this.chunkRewriteExecutor = new ThreadPoolExecutor(chunkRewriteThreads, chunkRewriteThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, this.getConfiguration().getChunkRewriteQueue())), chunkBuilder.build(), (task, executor) -> task.run());
+        } else {
+            this.chunkRewriteExecutor = null;
+        }
+
+        this.loginVerifier = new LoginVerifier(this.getConfiguration().getLoginThreads(), this.getConfiguration().getLoginQueue(),
+                this.getConfiguration().getLoginQueueTimeout());
+        this.chainVerificationCache = new ChainVerificationCache(this.getConfiguration().getLoginChainCacheSize(), this.getConfiguration().getLoginChainCacheTtl());
 
         this.commandSender = new ConsoleCommandSender(this);
         this.commandMap = new DefaultCommandMap(this, SimpleCommandMap.DEFAULT_PREFIX);
@@ -155,7 +189,20 @@ public class ProxyServer {
             this.queryHandler = new QueryHandler(this, bindAddress);
         }
 
-        this.bedrockServer = new BedrockServer(bindAddress, Runtime.getRuntime().availableProcessors());
+        int bindSockets = this.getConfiguration().getUpstreamBindSockets();
+        if (Epoll.isAvailable()) {
+            this.logger.debug("Using native epoll transport with " + bindSockets + " SO_REUSEPORT sockets");
+        } else {
+            this.logger.debug("Native epoll transport is not available: " + Epoll.unavailabilityCause().getMessage());
+            if (bindSockets > 1) {
+                // Auto-detected count is always 1 here, so only explicitly configured value is reported
+                this.logger.warning("Multiple upstream sockets require native epoll transport, binding single socket only!");
+                bindSockets = 1;
+            }
+        }
+
+        // RakNet binds one socket per bind thread when SO_REUSEPORT is supported
+        this.bedrockServer = new BedrockServer(bindAddress, bindSockets);
         this.bedrockServer.setHandler(new ProxyListener(this));
         this.bedrockServer.bind().join();
 
@@ -164,6 +211,10 @@ public class ProxyServer {
 
         this.logger.debug("Upstream <-> Proxy compression level " + this.getConfiguration().getUpstreamCompression());
         this.logger.debug("Downstream <-> Proxy compression level " + this.getConfiguration().getDownstreamCompression());
+        if (this.getConfiguration().isAdaptiveCompression()) {
+            this.compressionController = new CompressionController(this, this.getConfiguration().getAdaptiveCompressionMin(), this.getConfiguration().getAdaptiveCompressionMax());
+            this.compressionController.start();
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
         this.tickFuture = this.tickExecutor.scheduleAtFixedRate(this::tickProcessor, 50, 50, TimeUnit.MILLISECONDS);
@@ -204,6 +255,11 @@ public class ProxyServer {
         this.tickExecutor.shutdown();
         this.scheduler.shutdown();
         this.eventManager.getThreadedExecutor().shutdown();
+        if (this.chunkRewriteExecutor != null) {
+            this.chunkRewriteExecutor.shutdown();
+        }
+        this.downstreamClientPool.shutdown();
+        this.loginVerifier.shutdown();
         try {
             if (this.bedrockServer != null) {
                 this.bedrockServer.close();
@@ -247,8 +303,18 @@ public class ProxyServer {
     }
 
     public CompletableFuture<BedrockClient> bindClient(ProtocolVersion protocol) {
+        return this.bindClient(protocol, null);
+    }
+
+    /**
+     * Binds new client which channel and sessions are handled by given event loop.
+     *
+     * @param protocol  protocol used to select RakNet version.
+     * @param eventLoop event loop of the client or null to use shared event loop group.
+     */
+    public CompletableFuture<BedrockClient> bindClient(ProtocolVersion protocol, EventLoop eventLoop) {
         InetSocketAddress address = new InetSocketAddress("0.0.0.0", 0);
-        BedrockClient client = new BedrockClient(address);
+        BedrockClient client = eventLoop == null ? new BedrockClient(address) : new BedrockClient(address, eventLoop);
         client.setRakNetVersion(protocol.getRaknetVersion());
         return client.bind().thenApply(i -> client);
     }
@@ -386,6 +452,40 @@ public class ProxyServer {
         return this.packManager;
     }
 
+    public ChunkRewriteCache getChunkRewriteCache() {
+        return this.chunkRewriteCache;
+    }
+
+    /**
+     * @return executor used to rewrite chunks or null if chunks are rewritten on network threads.
+     */
+    public ExecutorService getChunkRewriteExecutor() {
+        return this.chunkRewriteExecutor;
+    }
+
+    public LoginVerifier getLoginVerifier() {
+        return this.loginVerifier;
+    }
+
+    public ChainVerificationCache getChainVerificationCache() {
+        return this.chainVerificationCache;
+    }
+
+    public BatchStats getBatchStats() {
+        return this.batchStats;
+    }
+
+    public DownstreamClientPool getDownstreamClientPool() {
+        return this.downstreamClientPool;
+    }
+
+    /**
+     * @return controller of upstream compression levels or null if adaptive compression is disabled.
+     */
+    public CompressionController getCompressionController() {
+        return this.compressionController;
+    }
+
     public QueryHandler getQueryHandler() {
         return this.queryHandler;
     }
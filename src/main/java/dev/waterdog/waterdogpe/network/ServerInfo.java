@@ -18,6 +18,7 @@ package dev.waterdog.waterdogpe.network;
 import com.nukkitx.network.raknet.RakNetPong;
 import dev.waterdog.waterdogpe.ProxyServer;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolConstants;
+import dev.waterdog.waterdogpe.network.session.DownstreamClientPool;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSets;
@@ -56,8 +57,9 @@ public class ServerInfo {
      * @return CompletableFuture with RakNetPong.
      */
     public CompletableFuture<RakNetPong> ping(long timeout, TimeUnit unit) {
-        return ProxyServer.getInstance().bindClient(ProtocolConstants.getLatestProtocol()).thenCompose(client ->
-                client.getRakNet().ping(this.address, timeout, unit).whenComplete((pong, error) -> client.close()));
+        DownstreamClientPool clientPool = ProxyServer.getInstance().getDownstreamClientPool();
+        return clientPool.acquire(ProtocolConstants.getLatestProtocol()).thenCompose(client ->
+                client.getRakNet().ping(this.address, timeout, unit).whenComplete((pong, error) -> clientPool.close(client, null, false)));
     }
 
     public void addPlayer(ProxiedPlayer player) {
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.bridge;
+
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockSession;
+import dev.waterdog.waterdogpe.network.protocol.BatchWriter;
+import dev.waterdog.waterdogpe.network.protocol.PacketInterest;
+import dev.waterdog.waterdogpe.player.ProxiedPlayer;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges batches sent to upstream within short time window to single batch.
+ * This reduces count of compressed and encrypted datagrams when downstream flushes many small batches.
+ * Batch is flushed once the window elapses, its size reaches the threshold or it contains latency-critical packet.
+ */
+public class BatchCoalescer {
+
+    private final ProxiedPlayer player;
+    private final BedrockSession session;
+    private final long windowMicros;
+    private final int maxBytes;
+    private final PacketInterest immediateFlush;
+
+    private BatchWriter writer;
+    private ScheduledFuture<?> flushFuture;
+
+    public BatchCoalescer(ProxiedPlayer player, BedrockSession session, long windowMicros, int maxBytes, PacketInterest immediateFlush) {
+        this.player = player;
+        this.session = session;
+        this.windowMicros = windowMicros;
+        this.maxBytes = maxBytes;
+        this.immediateFlush = immediateFlush;
+    }
+
+    /**
+     * Appends packets to pending batch. Packets are not released by this method.
+     */
+    public synchronized void write(Collection<BedrockPacket> packets) {
+        if (this.writer == null) {
+            this.writer = new BatchWriter(this.player.getProtocol().getCodec(), this.session);
+        }
+
+        boolean immediate = false;
+        for (BedrockPacket packet : packets) {
+            this.writer.write(packet);
+            if (this.immediateFlush.contains(packet.getPacketType())) {
+                immediate = true;
+            }
+        }
+
+        if (immediate || this.writer.getSize() >= this.maxBytes) {
+            this.flush();
+        } else if (this.flushFuture == null) {
+            this.flushFuture = this.session.getEventLoop().schedule(this::flush, this.windowMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * @return true if no packets are waiting to be merged.
+     */
+    public synchronized boolean isEmpty() {
+        return this.writer == null;
+    }
+
+    /**
+     * Compresses pending batch and passes it to the upstream sequencer.
+     * Must be called before any other batch is sent to upstream to keep the order.
+     */
+    public synchronized void flush() {
+        if (this.flushFuture != null) {
+            this.flushFuture.cancel(false);
+            this.flushFuture = null;
+        }
+
+        BatchWriter writer = this.writer;
+        if (writer == null) {
+            return;
+        }
+        this.writer = null;
+
+        int size = writer.getSize();
+        ByteBuf compressed;
+        try {
+            int threshold = this.player.getProxy().getConfiguration().getCompressionThreshold();
+            compressed = writer.compress(this.session.getCompressionLevel(), threshold);
+        } finally {
+            writer.release();
+        }
+        this.player.getProxy().getBatchStats().recordEncoded(size, compressed.readableBytes());
+        this.player.getUpstreamSequencer().add(compressed);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.bridge;
+
+import com.nukkitx.protocol.bedrock.BedrockSession;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Keeps compressed batches in the order in which they were received while some of them are processed asynchronously.
+ * Each batch reserves its slot and batches are sent to the session once all batches before them are completed.
+ */
+public class BatchSequencer {
+
+    private final BedrockSession session;
+    private final Queue<Slot> slots = new ArrayDeque<>();
+    private long sentBytes = 0;
+
+    public BatchSequencer(BedrockSession session) {
+        this.session = session;
+    }
+
+    /**
+     * @return true if no batch is waiting to be sent.
+     */
+    public synchronized boolean isEmpty() {
+        return this.slots.isEmpty();
+    }
+
+    /**
+     * @return total size of compressed batches sent by this sequencer.
+     */
+    public synchronized long getSentBytes() {
+        return this.sentBytes;
+    }
+
+    public synchronized Slot reserve() {
+        Slot slot = new Slot();
+        this.slots.add(slot);
+        return slot;
+    }
+
+    /**
+     * Adds batch which is ready to be sent to the end of the queue.
+     * Ownership of the buffer is passed to the sequencer.
+     */
+    public void add(ByteBuf compressed) {
+        this.complete(this.reserve(), compressed);
+    }
+
+    /**
+     * Completes reserved slot and sends all completed batches from the head of the queue.
+     * Ownership of the buffer is passed to the sequencer.
+     *
+     * @param slot       slot reserved for the batch.
+     * @param compressed compressed batch or null if batch should be dropped.
+     */
+    public synchronized void complete(Slot slot, ByteBuf compressed) {
+        slot.compressed = compressed;
+        slot.completed = true;
+
+        Slot head;
+        while ((head = this.slots.peek()) != null && head.completed) {
+            this.slots.poll();
+            if (head.compressed == null) {
+                continue;
+            }
+
+            try {
+                if (!this.session.isClosed()) {
+                    this.sentBytes += head.compressed.readableBytes();
+                    this.session.sendWrapped(head.compressed, this.session.isEncrypted());
+                }
+            } finally {
+                head.compressed.release();
+            }
+        }
+    }
+
+    public static class Slot {
+        private ByteBuf compressed;
+        private boolean completed;
+    }
+}
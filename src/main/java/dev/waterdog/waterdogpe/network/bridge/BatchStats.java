@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.bridge;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of batches forwarded by bridges.
+ * Passed batches are forwarded with original compressed payload, while re-encoded batches had to be compressed again.
+ * Also tracks packets which were queued during transfers.
+ */
+public class BatchStats {
+
+    /**
+     * Upper bounds of uncompressed batch size buckets used to track achieved compression ratio.
+     * Last bucket contains all batches bigger than last bound.
+     */
+    private static final int[] SIZE_BUCKETS = {128, 512, 2048, 8192, 32768};
+
+    private final LongAdder passedBatches = new LongAdder();
+    private final LongAdder passedBytes = new LongAdder();
+    private final LongAdder encodedBatches = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder transferQueues = new LongAdder();
+    private final LongAdder transferQueuedPackets = new LongAdder();
+    private final LongAdder transferQueueOverflows = new LongAdder();
+    private final LongAccumulator maxTransferQueueBytes = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] bucketBatches = createAdders(SIZE_BUCKETS.length + 1);
+    private final LongAdder[] bucketUncompressedBytes = createAdders(SIZE_BUCKETS.length + 1);
+    private final LongAdder[] bucketCompressedBytes = createAdders(SIZE_BUCKETS.length + 1);
+
+    private static LongAdder[] createAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static int getBucket(int uncompressedSize) {
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            if (uncompressedSize < SIZE_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return SIZE_BUCKETS.length;
+    }
+
+    public void recordPassed(int compressedSize) {
+        this.passedBatches.increment();
+        this.passedBytes.add(compressedSize);
+    }
+
+    public void recordEncoded(int uncompressedSize, int compressedSize) {
+        this.encodedBatches.increment();
+        this.encodedBytes.add(compressedSize);
+
+        int bucket = getBucket(uncompressedSize);
+        this.bucketBatches[bucket].increment();
+        this.bucketUncompressedBytes[bucket].add(uncompressedSize);
+        this.bucketCompressedBytes[bucket].add(compressedSize);
+    }
+
+    public long getPassedBatches() {
+        return this.passedBatches.sum();
+    }
+
+    public long getPassedBytes() {
+        return this.passedBytes.sum();
+    }
+
+    public long getEncodedBatches() {
+        return this.encodedBatches.sum();
+    }
+
+    public long getEncodedBytes() {
+        return this.encodedBytes.sum();
+    }
+
+    /**
+     * @return ratio of batches which were forwarded without compression.
+     */
+    public double getPassthroughRatio() {
+        long passed = this.passedBatches.sum();
+        long total = passed + this.encodedBatches.sum();
+        return total == 0 ? 0 : (double) passed / total;
+    }
+
+    /**
+     * @return upper bounds of size buckets in bytes. Index after the last bound refers to bucket of bigger batches.
+     */
+    public static int[] getSizeBuckets() {
+        return SIZE_BUCKETS.clone();
+    }
+
+    public long getBucketBatches(int bucket) {
+        return this.bucketBatches[bucket].sum();
+    }
+
+    /**
+     * @return ratio of compressed to uncompressed size of batches encoded in given size bucket.
+     */
+    public double getBucketCompressionRatio(int bucket) {
+        long uncompressed = this.bucketUncompressedBytes[bucket].sum();
+        return uncompressed == 0 ? 0 : (double) this.bucketCompressedBytes[bucket].sum() / uncompressed;
+    }
+
+    /**
+     * Records transfer queue which was sent to upstream.
+     *
+     * @param packets count of sent packets.
+     * @param bytes   approximate size of sent packets.
+     */
+    public void recordTransferQueue(int packets, long bytes) {
+        this.transferQueues.increment();
+        this.transferQueuedPackets.add(packets);
+        this.maxTransferQueueBytes.accumulate(bytes);
+    }
+
+    public void recordTransferQueueOverflow() {
+        this.transferQueueOverflows.increment();
+    }
+
+    public long getTransferQueues() {
+        return this.transferQueues.sum();
+    }
+
+    public long getTransferQueuedPackets() {
+        return this.transferQueuedPackets.sum();
+    }
+
+    /**
+     * @return count of transfer queues which were sent early because they reached the limit.
+     */
+    public long getTransferQueueOverflows() {
+        return this.transferQueueOverflows.sum();
+    }
+
+    public long getMaxTransferQueueBytes() {
+        return this.maxTransferQueueBytes.get();
+    }
+}
@@ -16,29 +16,140 @@
 package dev.waterdog.waterdogpe.network.bridge;
 
 import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
 import com.nukkitx.protocol.bedrock.BedrockSession;
 import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
-import dev.waterdog.waterdogpe.network.rewrite.RewriteMaps;
+import com.nukkitx.protocol.bedrock.packet.LevelChunkPacket;
+import dev.waterdog.waterdogpe.network.rewrite.BlockMap;
+import dev.waterdog.waterdogpe.network.rewrite.RewritePipeline;
+import dev.waterdog.waterdogpe.network.rewrite.types.BlockPaletteRewrite;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
 import dev.waterdog.waterdogpe.utils.exceptions.CancelSignalException;
+import dev.waterdog.waterdogpe.utils.types.PacketHandlerChain;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 public class DownstreamBridge extends ProxyBatchBridge {
 
+    /**
+     * Executor used to rewrite chunks outside of network thread. If null chunks are rewritten directly.
+     */
+    private final ExecutorService chunkExecutor;
+    /**
+     * Signalizes that currently handled batch contains chunks which were not rewritten yet.
+     */
+    private boolean deferredChunks = false;
+
     public DownstreamBridge(ProxiedPlayer player, BedrockSession session) {
         super(player, session);
+        this.chunkExecutor = player.getProxy().getChunkRewriteExecutor();
+    }
+
+    @Override
+    public void handle(BedrockSession session, ByteBuf buf, Collection<BedrockPacket> packets) {
+        this.deferredChunks = false;
+        super.handle(session, buf, packets);
+    }
+
+    @Override
+    protected BatchSequencer getSequencer() {
+        return this.player.getUpstreamSequencer();
+    }
+
+    @Override
+    protected BatchCoalescer getCoalescer() {
+        return this.player.getUpstreamCoalescer();
+    }
+
+    @Override
+    protected void sendBatch(ByteBuf buf, List<BedrockPacket> packets, boolean unchanged) {
+        BatchCoalescer coalescer = this.getCoalescer();
+        if (coalescer == null || this.deferredChunks) {
+            super.sendBatch(buf, packets, unchanged);
+        } else {
+            // Original batch is not used, packets are merged with next batches and compressed together
+            coalescer.write(packets);
+        }
+    }
+
+    @Override
+    protected boolean isInterested(BedrockPacketType type, BedrockPacketHandler handler) {
+        return super.isInterested(type, handler) || this.player.getPluginDownstreamHandlers().isInterested(type);
+    }
+
+    @Override
+    protected PacketHandlerChain getPluginHandlers() {
+        return this.player.getPluginDownstreamHandlers();
     }
 
     @Override
     public boolean handlePacket(BedrockPacket packet, BedrockPacketHandler handler) throws CancelSignalException {
         boolean changed = super.handlePacket(packet, handler);
 
-        RewriteMaps rewriteMaps = this.player.getRewriteMaps();
-        boolean rewroteBlock = rewriteMaps.getBlockMap() != null && rewriteMaps.getBlockMap().doRewrite(packet);
-
-        boolean pluginHandled = false;
-        if (this.player.getPluginDownstreamHandler() != null) {
-            pluginHandled = this.player.getPluginDownstreamHandler().handlePacket(packet);
+        BlockMap blockMap = this.player.getRewriteMaps().getBlockMap();
+        boolean rewroteBlock = false;
+        if ((this.getSteps(packet.getPacketType()) & RewritePipeline.BLOCK_REWRITE) != 0 && blockMap != null) {
+            if (this.canDeferChunk(packet)) {
+                // Chunk will be rewritten together with whole batch by chunk executor
+                this.deferredChunks = true;
+                rewroteBlock = true;
+            } else {
+                rewroteBlock = blockMap.doRewrite(packet);
+            }
         }
+
+        boolean pluginHandled = this.player.getPluginDownstreamHandlers().handlePacket(packet);
         return changed || rewroteBlock || pluginHandled;
     }
+
+    private boolean canDeferChunk(BedrockPacket packet) {
+        // Since 1.16.100 chunks are passed rawly and are decoded only for plugin handlers, so they are never deferred.
+        // Plugin handlers must receive already rewritten chunk
+        return this.chunkExecutor != null && packet instanceof LevelChunkPacket &&
+                !this.player.getPluginDownstreamHandlers().isInterested(BedrockPacketType.LEVEL_CHUNK);
+    }
+
+    @Override
+    protected void sendPackets(Collection<BedrockPacket> packets) {
+        if (!this.deferredChunks) {
+            super.sendPackets(packets);
+            return;
+        }
+
+        // Packets are released by handle() method once this method returns
+        List<BedrockPacket> batch = new ObjectArrayList<>(packets);
+        for (BedrockPacket packet : batch) {
+            ReferenceCountUtil.retain(packet);
+        }
+
+        // Rewrite maps are replaced during transfer, chunks must be rewritten using palette of the server which sent them
+        BlockMap blockMap = this.player.getRewriteMaps().getBlockMap();
+        BlockPaletteRewrite paletteRewrite = blockMap.getPaletteRewrite();
+
+        this.flushCoalescer();
+        BatchSequencer.Slot slot = this.player.getUpstreamSequencer().reserve();
+        this.chunkExecutor.execute(() -> {
+            ByteBuf compressed = null;
+            try {
+                for (BedrockPacket packet : batch) {
+                    if (packet instanceof LevelChunkPacket) {
+                        blockMap.rewriteChunk((LevelChunkPacket) packet, paletteRewrite);
+                    }
+                }
+                compressed = this.encodeBatch(batch);
+            } catch (Throwable t) {
+                // Dropping the batch would leave client with missing chunks and packets, so we rather disconnect
+                this.player.getLogger().error("Unable to rewrite chunk batch for " + this.player.getName(), t);
+                this.session.getEventLoop().execute(() -> this.player.disconnect("Unable to rewrite chunk data"));
+            } finally {
+                this.deallocatePackets(batch);
+                this.player.getUpstreamSequencer().complete(slot, compressed);
+            }
+        });
+    }
 }
@@ -16,12 +16,20 @@
 package dev.waterdog.waterdogpe.network.bridge;
 
 import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
 import com.nukkitx.protocol.bedrock.BedrockSession;
 import com.nukkitx.protocol.bedrock.handler.BatchHandler;
 import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
 import com.nukkitx.protocol.bedrock.packet.UnknownPacket;
+import dev.waterdog.waterdogpe.network.protocol.BatchWriter;
+import dev.waterdog.waterdogpe.network.protocol.PacketInterest;
+import dev.waterdog.waterdogpe.network.protocol.PacketUtils;
+import dev.waterdog.waterdogpe.network.rewrite.RewriteMaps;
+import dev.waterdog.waterdogpe.network.rewrite.RewritePipeline;
+import dev.waterdog.waterdogpe.network.rewrite.types.RewriteData;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
 import dev.waterdog.waterdogpe.utils.exceptions.CancelSignalException;
+import dev.waterdog.waterdogpe.utils.types.PacketHandlerChain;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.ReferenceCountUtil;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
@@ -33,12 +41,17 @@ public abstract class ProxyBatchBridge implements BatchHandler {
 
     protected final BedrockSession session;
     protected final ProxiedPlayer player;
+    protected final RewritePipeline pipeline;
 
     protected boolean trackEntities = true;
 
+    private BedrockPacketHandler lastHandler;
+    private PacketInterest handlerInterest = PacketInterest.NONE;
+
     public ProxyBatchBridge(ProxiedPlayer player, BedrockSession session) {
         this.session = session;
         this.player = player;
+        this.pipeline = RewritePipeline.get(player.getProtocol());
     }
 
     @Override
@@ -48,6 +61,25 @@ public abstract class ProxyBatchBridge implements BatchHandler {
         boolean changed = false;
 
         for (BedrockPacket packet : packets) {
+            if ((packet instanceof UnknownPacket) && this.isDecodeRequired((UnknownPacket) packet)) {
+                try {
+                    BedrockPacket result = this.handleRawPacket((UnknownPacket) packet, session, handler);
+                    if (result != packet) {
+                        changed = true;
+                    }
+                    allPackets.add(result);
+                } catch (CancelSignalException e) {
+                    ReferenceCountUtil.release(packet);
+                }
+                continue;
+            }
+
+            if (!(packet instanceof UnknownPacket) && !this.isInterested(packet.getPacketType(), handler)) {
+                // Nobody would handle this packet, we can forward it as it is
+                allPackets.add(packet);
+                continue;
+            }
+
             try {
                 if ((packet instanceof UnknownPacket) && this.handleUnknownPacket((UnknownPacket) packet) ||
                         !(packet instanceof UnknownPacket) && this.handlePacket(packet, handler)) {
@@ -60,18 +92,101 @@ public abstract class ProxyBatchBridge implements BatchHandler {
             }
         }
 
-        if (!allPackets.isEmpty() && (changed || allPackets.size() != packets.size())) {
-            this.session.sendWrapped(allPackets, this.session.isEncrypted());
-            return;
+        if (!allPackets.isEmpty()) {
+            this.sendBatch(buf, allPackets, !changed && allPackets.size() == packets.size());
         }
 
-        if (!changed && allPackets.size() == packets.size()) {
+        // Packets from array aren't used anymore so we can deallocate whole.
+        this.deallocatePackets(allPackets);
+    }
+
+    /**
+     * Sends handled batch to the session.
+     *
+     * @param buf       original compressed batch.
+     * @param packets   packets which were not canceled. Packets are not released by this method.
+     * @param unchanged true if no packet was changed or canceled, so original batch can be passed.
+     */
+    protected void sendBatch(ByteBuf buf, List<BedrockPacket> packets, boolean unchanged) {
+        if (unchanged) {
             buf.resetReaderIndex(); // Set reader index to position where payload is decrypted.
-            this.session.sendWrapped(buf, this.session.isEncrypted());
+            this.player.getProxy().getBatchStats().recordPassed(buf.readableBytes());
+            this.sendCompressed(buf);
+        } else {
+            this.sendPackets(packets);
         }
+    }
 
-        // Packets from array aren't used so we can deallocate whole.
-        this.deallocatePackets(allPackets);
+    /**
+     * Builds new batch from given packets and sends it to the session.
+     * Raw packets are spliced into the batch without copying, only decoded packets are serialized again.
+     * Packets are not released by this method.
+     */
+    protected void sendPackets(Collection<BedrockPacket> packets) {
+        ByteBuf compressed = this.encodeBatch(packets);
+        try {
+            this.sendCompressed(compressed);
+        } finally {
+            compressed.release();
+        }
+    }
+
+    /**
+     * Sends compressed batch to the session. Buffer is not released by this method.
+     */
+    protected void sendCompressed(ByteBuf compressed) {
+        BatchSequencer sequencer = this.getSequencer();
+        if (sequencer == null) {
+            this.session.sendWrapped(compressed, this.session.isEncrypted());
+            return;
+        }
+
+        // Batches merged before must be sent first
+        this.flushCoalescer();
+        sequencer.add(compressed.retain());
+    }
+
+    /**
+     * Flushes batches merged by upstream coalescer, if coalescing is used by this bridge.
+     */
+    protected void flushCoalescer() {
+        BatchCoalescer coalescer = this.getCoalescer();
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+    }
+
+    /**
+     * @return coalescer which merges batches sent to the session or null if batches are not merged.
+     */
+    protected BatchCoalescer getCoalescer() {
+        return null;
+    }
+
+    /**
+     * @return sequencer which orders batches sent to the session or null if batches are sent directly.
+     */
+    protected BatchSequencer getSequencer() {
+        return null;
+    }
+
+    /**
+     * Encodes and compresses packets to new batch. Returned buffer must be released by the caller.
+     * This method can be called from any thread.
+     */
+    protected ByteBuf encodeBatch(Collection<BedrockPacket> packets) {
+        BatchWriter writer = new BatchWriter(this.player.getProtocol().getCodec(), this.session);
+        try {
+            for (BedrockPacket packet : packets) {
+                writer.write(packet);
+            }
+            int threshold = this.player.getProxy().getConfiguration().getCompressionThreshold();
+            ByteBuf compressed = writer.compress(this.session.getCompressionLevel(), threshold);
+            this.player.getProxy().getBatchStats().recordEncoded(writer.getSize(), compressed.readableBytes());
+            return compressed;
+        } finally {
+            writer.release();
+        }
     }
 
     protected void deallocatePackets(Collection<BedrockPacket> packets) {
@@ -83,6 +198,43 @@ public abstract class ProxyBatchBridge implements BatchHandler {
         }
     }
 
+    /**
+     * Checks if packet of given type has to be dispatched to the handlers.
+     * Packets which are not handled by session handler, rewrite maps or plugin handlers are passed unchanged.
+     *
+     * @param type    type of the packet.
+     * @param handler current packet handler of the session.
+     * @return if any handler is interested in this packet.
+     */
+    protected boolean isInterested(BedrockPacketType type, BedrockPacketHandler handler) {
+        if (handler != this.lastHandler) {
+            this.lastHandler = handler;
+            this.handlerInterest = handler == null ? PacketInterest.NONE : PacketInterest.of(handler.getClass());
+        }
+        return this.getSteps(type) != 0 || this.handlerInterest.contains(type);
+    }
+
+    /**
+     * @return rewrite steps which currently apply to packet type.
+     */
+    protected int getSteps(BedrockPacketType type) {
+        int steps = this.pipeline.getSteps(type);
+        if (steps == 0) {
+            return 0;
+        }
+
+        RewriteData rewriteData = this.player.getRewriteData();
+        if (rewriteData.isEntityIdIdentity()) {
+            // Entity ids are same on both sides, EntityMap would not change anything
+            steps &= ~RewritePipeline.ENTITY_REWRITE;
+        }
+        if (rewriteData.isBlockRewriteIdentity()) {
+            // Block palettes are equal, chunks and block packets are passed unchanged
+            steps &= ~RewritePipeline.BLOCK_REWRITE;
+        }
+        return steps;
+    }
+
     /**
      * @return if packet was changed
      * @throws CancelSignalException if we do not want to send packet
@@ -95,18 +247,62 @@ public abstract class ProxyBatchBridge implements BatchHandler {
             canceled = true;
         }
 
-        boolean changed = this.player.getRewriteMaps().getEntityMap().doRewrite(packet) || handled;
+        RewriteMaps rewriteMaps = this.player.getRewriteMaps();
+        int steps = this.getSteps(packet.getPacketType());
+        boolean changed = (steps & RewritePipeline.ENTITY_REWRITE) != 0 && rewriteMaps.getEntityMap().doRewrite(packet) || handled;
         if (!changed && canceled) {
             throw CancelSignalException.CANCEL;
         }
 
-        if (this.trackEntities) {
-            this.player.getRewriteMaps().getEntityTracker().trackEntity(packet);
+        if (this.trackEntities && (steps & RewritePipeline.ENTITY_TRACK) != 0) {
+            rewriteMaps.getEntityTracker().trackEntity(packet);
         }
         return changed;
     }
 
+    /**
+     * @return plugin handlers which receive packets passing this bridge or null if plugin handlers are not used.
+     */
+    protected PacketHandlerChain getPluginHandlers() {
+        return null;
+    }
+
+    /**
+     * Packets which are passed rawly by fast codec have to be decoded if some plugin handler wants to receive them.
+     */
+    private boolean isDecodeRequired(UnknownPacket packet) {
+        PacketHandlerChain pluginHandlers = this.getPluginHandlers();
+        if (pluginHandlers == null || pluginHandlers.isEmpty()) {
+            return false;
+        }
+
+        BedrockPacketType type = this.player.getProtocol().getRawPacketType(packet.getPacketId());
+        return type != null && pluginHandlers.isInterested(type);
+    }
+
+    /**
+     * Decodes raw packet using default codec and passes it to the handlers.
+     * Payload of the raw packet is not released by this method.
+     *
+     * @return original raw packet if decoded packet was not changed, otherwise new raw packet with encoded changes.
+     * @throws CancelSignalException if we do not want to send packet
+     */
+    private BedrockPacket handleRawPacket(UnknownPacket packet, BedrockSession session, BedrockPacketHandler handler) throws CancelSignalException {
+        BedrockPacket decoded = PacketUtils.decodeRaw(packet, this.player.getProtocol(), session);
+        try {
+            if (!this.handlePacket(decoded, handler)) {
+                return packet;
+            }
+            // Fast codec does not contain serializer of this packet
+            UnknownPacket encoded = PacketUtils.encodeRaw(decoded, this.player.getProtocol(), this.session);
+            packet.release();
+            return encoded;
+        } finally {
+            ReferenceCountUtil.release(decoded);
+        }
+    }
+
     public boolean handleUnknownPacket(UnknownPacket packet) {
-        return false;
+        return this.player.getRewriteMaps().getEntityMap().doRewrite(packet);
     }
 }
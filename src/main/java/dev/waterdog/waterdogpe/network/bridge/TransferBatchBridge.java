@@ -21,10 +21,10 @@ import com.nukkitx.protocol.bedrock.BedrockSession;
 import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
 import com.nukkitx.protocol.bedrock.packet.UnknownPacket;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
+import dev.waterdog.waterdogpe.utils.ProxyConfig;
 import dev.waterdog.waterdogpe.utils.exceptions.CancelSignalException;
 import io.netty.buffer.ByteBuf;
 import io.netty.util.ReferenceCountUtil;
-import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import java.util.Collection;
 import java.util.List;
@@ -32,12 +32,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TransferBatchBridge extends ProxyBatchBridge {
 
-    private final List<BedrockPacket> packetQueue = new ObjectArrayList<>();
+    private final TransferQueue packetQueue;
     private final AtomicBoolean hasStartGame = new AtomicBoolean(false);
 
     public TransferBatchBridge(ProxiedPlayer player, BedrockSession session) {
         super(player, session);
         this.trackEntities = false;
+
+        ProxyConfig config = player.getProxy().getConfiguration();
+        this.packetQueue = new TransferQueue(config.getTransferQueueMaxPackets(), config.getTransferQueueMaxSize() * 1024L);
     }
 
     @Override
@@ -46,11 +49,45 @@ public class TransferBatchBridge extends ProxyBatchBridge {
 
         // Send queued packets to upstream if new bridge is used
         if (this.hasStartGame.get() && (session.getBatchHandler() instanceof DownstreamBridge) && !this.packetQueue.isEmpty()) {
-            this.session.sendWrapped(this.packetQueue, this.session.isEncrypted());
-            this.packetQueue.clear();
+            this.flushQueue();
+        }
+    }
+
+    private void queuePacket(BedrockPacket packet) {
+        this.packetQueue.add(packet);
+        if (this.packetQueue.isOverLimit()) {
+            // StartGamePacket was already handled, so player uses the new downstream and transfer cleanup is sequenced
+            // before these packets. Sending them early keeps the same order as sending them at the end of the batch.
+            this.player.getProxy().getBatchStats().recordTransferQueueOverflow();
+            this.flushQueue();
         }
     }
 
+    private void flushQueue() {
+        this.player.getProxy().getBatchStats().recordTransferQueue(this.packetQueue.getCount(), this.packetQueue.getBytes());
+        try {
+            this.sendPackets(this.packetQueue.getPackets());
+        } finally {
+            this.packetQueue.release();
+        }
+    }
+
+    @Override
+    protected BatchSequencer getSequencer() {
+        return this.player.getUpstreamSequencer();
+    }
+
+    @Override
+    protected BatchCoalescer getCoalescer() {
+        return this.player.getUpstreamCoalescer();
+    }
+
+    @Override
+    protected boolean isInterested(BedrockPacketType type, BedrockPacketHandler handler) {
+        // All packets after StartGamePacket must be queued
+        return true;
+    }
+
     @Override
     public boolean handlePacket(BedrockPacket packet, BedrockPacketHandler handler) throws CancelSignalException {
         boolean isStartGame = packet.getPacketType() == BedrockPacketType.START_GAME;
@@ -62,20 +99,24 @@ public class TransferBatchBridge extends ProxyBatchBridge {
         // Packets after StartGamePacket should be queued
         // Ignore LevelEvent packet to prevent massive amounts of packets in queue
         if (!isStartGame && this.hasStartGame.get() && packet.getPacketType() != BedrockPacketType.LEVEL_EVENT) {
-            this.packetQueue.add(ReferenceCountUtil.retain(packet));
+            this.queuePacket(ReferenceCountUtil.retain(packet));
         }
         throw CancelSignalException.CANCEL;
     }
 
     @Override
     public boolean handleUnknownPacket(UnknownPacket packet) {
+        super.handleUnknownPacket(packet);
         if (this.hasStartGame.get()) {
-            this.packetQueue.add(packet.retain());
+            this.queuePacket(packet.retain());
         }
         throw CancelSignalException.CANCEL;
     }
 
+    /**
+     * @return copy of currently queued packets.
+     */
     public List<BedrockPacket> getPacketQueue() {
-        return this.packetQueue;
+        return this.packetQueue.getPackets();
     }
 }
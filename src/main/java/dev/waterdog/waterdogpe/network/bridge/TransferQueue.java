@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.bridge;
+
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.packet.LevelChunkPacket;
+import com.nukkitx.protocol.bedrock.packet.UnknownPacket;
+import io.netty.util.ReferenceCountUtil;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.util.List;
+
+/**
+ * Queue of packets received from new downstream after StartGamePacket, which are sent to upstream once transfer completes.
+ * StartGamePacket switches the downstream to the new bridge, so the queue holds only rest of the batch which contained it.
+ * Queue is bounded by count and approximate size of packets, so single large batch is not retained whole.
+ * Queued packets are owned by the queue and released once the queue is released.
+ */
+public class TransferQueue {
+
+    /**
+     * Size used for decoded packets which size can not be cheaply determined.
+     */
+    private static final int DEFAULT_PACKET_SIZE = 64;
+
+    private final int maxPackets;
+    private final long maxBytes;
+
+    private final List<BedrockPacket> packets = new ObjectArrayList<>();
+    private long bytes = 0;
+
+    public TransferQueue(int maxPackets, long maxBytes) {
+        this.maxPackets = maxPackets;
+        this.maxBytes = maxBytes;
+    }
+
+    public void add(BedrockPacket packet) {
+        this.packets.add(packet);
+        this.bytes += getSize(packet);
+    }
+
+    private static int getSize(BedrockPacket packet) {
+        if (packet instanceof UnknownPacket) {
+            return ((UnknownPacket) packet).getPayload().readableBytes();
+        }
+        if (packet instanceof LevelChunkPacket) {
+            // Chunks are decoded only by codecs before 1.16.100
+            return ((LevelChunkPacket) packet).getData().length;
+        }
+        return DEFAULT_PACKET_SIZE;
+    }
+
+    /**
+     * @return true if count or size of queued packets exceeds the limit.
+     */
+    public boolean isOverLimit() {
+        return this.packets.size() > this.maxPackets || this.bytes > this.maxBytes;
+    }
+
+    public boolean isEmpty() {
+        return this.packets.isEmpty();
+    }
+
+    /**
+     * @return copy of queued packets in order. Packets are still owned by the queue.
+     */
+    public List<BedrockPacket> getPackets() {
+        return new ObjectArrayList<>(this.packets);
+    }
+
+    /**
+     * Releases all queued packets and resets the queue.
+     */
+    public void release() {
+        for (BedrockPacket packet : this.packets) {
+            ReferenceCountUtil.release(packet);
+        }
+        this.packets.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * @return count of queued packets.
+     */
+    public int getCount() {
+        return this.packets.size();
+    }
+
+    /**
+     * @return approximate size of queued packets in bytes.
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+}
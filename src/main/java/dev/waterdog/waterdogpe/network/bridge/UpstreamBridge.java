@@ -16,10 +16,12 @@
 package dev.waterdog.waterdogpe.network.bridge;
 
 import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
 import com.nukkitx.protocol.bedrock.BedrockSession;
 import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
 import dev.waterdog.waterdogpe.utils.exceptions.CancelSignalException;
+import dev.waterdog.waterdogpe.utils.types.PacketHandlerChain;
 
 public class UpstreamBridge extends ProxyBatchBridge {
 
@@ -27,13 +29,20 @@ public class UpstreamBridge extends ProxyBatchBridge {
         super(player, session);
     }
 
+    @Override
+    protected boolean isInterested(BedrockPacketType type, BedrockPacketHandler handler) {
+        return super.isInterested(type, handler) || this.player.getPluginUpstreamHandlers().isInterested(type);
+    }
+
+    @Override
+    protected PacketHandlerChain getPluginHandlers() {
+        return this.player.getPluginUpstreamHandlers();
+    }
+
     @Override
     public boolean handlePacket(BedrockPacket packet, BedrockPacketHandler handler) throws CancelSignalException {
         boolean changed = super.handlePacket(packet, handler);
-        boolean pluginHandled = false;
-        if (this.player.getPluginUpstreamHandler() != null) {
-            pluginHandled = this.player.getPluginUpstreamHandler().handlePacket(packet);
-        }
+        boolean pluginHandled = this.player.getPluginUpstreamHandlers().handlePacket(packet);
         return changed || pluginHandled;
     }
 }
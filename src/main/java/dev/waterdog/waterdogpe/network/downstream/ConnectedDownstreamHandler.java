@@ -36,13 +36,13 @@ public class ConnectedDownstreamHandler extends AbstractDownstreamHandler {
 
     @Override
     public final boolean handle(SetDisplayObjectivePacket packet) {
-        this.player.getScoreboards().add(packet.getObjectiveId());
+        this.player.getTrackingState().addScoreboard(packet.getObjectiveId());
         return false;
     }
 
     @Override
     public final boolean handle(RemoveObjectivePacket packet) {
-        this.player.getScoreboards().remove(packet.getObjectiveId());
+        this.player.getTrackingState().removeScoreboard(packet.getObjectiveId());
         return false;
     }
 
@@ -50,9 +50,11 @@ public class ConnectedDownstreamHandler extends AbstractDownstreamHandler {
     public final boolean handle(BossEventPacket packet) {
         switch (packet.getAction()) {
             case CREATE:
-                this.player.getBossbars().add(packet.getBossUniqueEntityId());
+                this.player.getTrackingState().addBossbar(packet.getBossUniqueEntityId());
+                break;
             case REMOVE:
-                this.player.getBossbars().remove(packet.getBossUniqueEntityId());
+                this.player.getTrackingState().removeBossbar(packet.getBossUniqueEntityId());
+                break;
         }
         return false;
     }
@@ -98,7 +98,12 @@ public class InitialHandler extends AbstractDownstreamHandler {
     public final boolean handle(StartGamePacket packet) {
         RewriteData rewriteData = this.player.getRewriteData();
         rewriteData.setOriginalEntityId(packet.getRuntimeEntityId());
-        rewriteData.setEntityId(ThreadLocalRandom.current().nextInt(10000, 15000));
+        if (this.player.getProxy().getConfiguration().keepEntityId()) {
+            // Client will use the same id as first downstream server, so it does not have to be rewritten
+            rewriteData.setEntityId(packet.getRuntimeEntityId());
+        } else {
+            rewriteData.setEntityId(ThreadLocalRandom.current().nextInt(10000, 15000));
+        }
         rewriteData.setGameRules(packet.getGamerules());
         rewriteData.setDimension(packet.getDimensionId());
         rewriteData.setSpawnPosition(packet.getPlayerPosition());
@@ -17,6 +17,7 @@ package dev.waterdog.waterdogpe.network.downstream;
 
 import com.nimbusds.jwt.SignedJWT;
 import com.nukkitx.math.vector.Vector3f;
+import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.BedrockClient;
 import com.nukkitx.protocol.bedrock.BedrockClientSession;
 import com.nukkitx.protocol.bedrock.packet.*;
@@ -26,36 +27,52 @@ import dev.waterdog.waterdogpe.network.ServerInfo;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
 import dev.waterdog.waterdogpe.network.rewrite.types.BlockPalette;
 import dev.waterdog.waterdogpe.network.rewrite.types.RewriteData;
+import dev.waterdog.waterdogpe.network.session.PrewarmedConnection;
 import dev.waterdog.waterdogpe.network.session.ServerConnection;
 import dev.waterdog.waterdogpe.network.session.SessionInjections;
 import dev.waterdog.waterdogpe.player.PlayerRewriteUtils;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
 import dev.waterdog.waterdogpe.utils.exceptions.CancelSignalException;
 import dev.waterdog.waterdogpe.utils.types.TranslationContainer;
-import it.unimi.dsi.fastutil.longs.Long2LongMap;
-import it.unimi.dsi.fastutil.longs.LongSet;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
 
 import javax.crypto.SecretKey;
 import java.net.URI;
 import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.util.Collection;
-import java.util.UUID;
+import java.util.List;
 
 public class SwitchDownstreamHandler extends AbstractDownstreamHandler {
 
     private final BedrockClient client;
+    private final BedrockClientSession downstream;
     private final ServerInfo serverInfo;
+    /**
+     * Set if connection is opened in background before the transfer.
+     */
+    private final PrewarmedConnection prewarmedConnection;
 
-    public SwitchDownstreamHandler(ProxiedPlayer player, ServerInfo serverInfo, BedrockClient client) {
+    public SwitchDownstreamHandler(ProxiedPlayer player, ServerInfo serverInfo, BedrockClient client, BedrockClientSession downstream) {
+        this(player, serverInfo, client, downstream, null);
+    }
+
+    public SwitchDownstreamHandler(ProxiedPlayer player, ServerInfo serverInfo, BedrockClient client, BedrockClientSession downstream, PrewarmedConnection prewarmedConnection) {
         super(player);
         this.serverInfo = serverInfo;
         this.client = client;
+        this.downstream = downstream;
+        this.prewarmedConnection = prewarmedConnection;
+    }
+
+    /**
+     * @return true if connection is prewarmed and was not adopted by transfer yet.
+     */
+    private boolean isPrewarming() {
+        return this.prewarmedConnection != null && !this.prewarmedConnection.isAdopted();
     }
 
     public BedrockClientSession getDownstream() {
-        return this.client.getSession();
+        return this.downstream;
     }
 
     @Override
@@ -89,6 +106,11 @@ public class SwitchDownstreamHandler extends AbstractDownstreamHandler {
 
     @Override
     public final boolean handle(ResourcePackStackPacket packet) {
+        if (this.prewarmedConnection != null && this.prewarmedConnection.park()) {
+            // Response is sent once the connection is adopted
+            throw CancelSignalException.CANCEL;
+        }
+
         ResourcePackClientResponsePacket response = new ResourcePackClientResponsePacket();
         response.setStatus(ResourcePackClientResponsePacket.Status.COMPLETED);
         this.getDownstream().sendPacketImmediately(response);
@@ -98,7 +120,11 @@ public class SwitchDownstreamHandler extends AbstractDownstreamHandler {
     @Override
     public boolean handle(PlayStatusPacket packet) {
         return this.onPlayStatus(packet, message -> {
-            this.client.close();
+            if (this.isPrewarming()) {
+                this.player.discardPrewarmedConnection(this.prewarmedConnection);
+                return;
+            }
+            this.player.getProxy().getDownstreamClientPool().close(this.client, this.downstream, false);
             this.player.setPendingConnection(null);
             this.player.sendMessage(new TranslationContainer("waterdog.downstream.transfer.failed", this.serverInfo.getServerName(), message));
         }, this.getDownstream());
@@ -120,51 +146,23 @@ public class SwitchDownstreamHandler extends AbstractDownstreamHandler {
             rewriteData.setBlockProperties(packet.getBlockProperties());
         }
 
-        Collection<UUID> playerList = this.player.getPlayers();
-        PlayerRewriteUtils.injectRemoveAllPlayers(this.player.getUpstream(), playerList);
-        playerList.clear();
-
-        Long2LongMap entityLinks = this.player.getEntityLinks();
-        for (Long2LongMap.Entry entry : entityLinks.long2LongEntrySet()) {
-            PlayerRewriteUtils.injectRemoveEntityLink(this.player.getUpstream(), entry.getLongKey(), entry.getLongValue());
-        }
-        entityLinks.clear();
-
-        LongSet entities = this.player.getEntities();
-        for (long entityId : entities) {
-            PlayerRewriteUtils.injectRemoveEntity(this.player.getUpstream(), entityId);
-        }
-        entities.clear();
-
-        ObjectSet<String> scoreboards = this.player.getScoreboards();
-        for (String scoreboard : scoreboards) {
-            PlayerRewriteUtils.injectRemoveObjective(this.player.getUpstream(), scoreboard);
-        }
-        scoreboards.clear();
-
-        LongSet bossbars = this.player.getBossbars();
-        for (long bossbarId : bossbars) {
-            PlayerRewriteUtils.injectRemoveBossbar(this.player.getUpstream(), bossbarId);
-        }
-        bossbars.clear();
-
         SetLocalPlayerAsInitializedPacket initializedPacket = new SetLocalPlayerAsInitializedPacket();
         initializedPacket.setRuntimeEntityId(rewriteData.getOriginalEntityId());
         this.getDownstream().sendPacket(initializedPacket);
 
-        PlayerRewriteUtils.injectGameMode(this.player.getUpstream(), packet.getPlayerGameType());
-
-        Vector3f rotation = Vector3f.from(packet.getRotation().getX(), 0, packet.getRotation().getY());
-        PlayerRewriteUtils.injectPosition(this.player.getUpstream(), packet.getPlayerPosition(), rotation, rewriteData.getEntityId());
-
         RequestChunkRadiusPacket chunkRadius = this.player.getLoginData().getChunkRadius();
         this.getDownstream().sendPacket(chunkRadius);
-        PlayerRewriteUtils.injectChunkPublisherUpdate(this.player.getUpstream(), packet.getPlayerPosition().toInt(), chunkRadius.getRadius());
 
-        PlayerRewriteUtils.injectRemoveAllEffects(this.player.getUpstream(), rewriteData.getEntityId());
-        PlayerRewriteUtils.injectClearWeather(this.player.getUpstream());
-        PlayerRewriteUtils.injectGameRules(this.player.getUpstream(), rewriteData.getGameRules());
-        PlayerRewriteUtils.injectSetDifficulty(this.player.getUpstream(), packet.getDifficulty());
+        // State of the new server is sent in the cleanup batch, so it is ordered after chunks and cleanup of the old server
+        Vector3f rotation = Vector3f.from(packet.getRotation().getX(), 0, packet.getRotation().getY());
+        List<BedrockPacket> packets = new ArrayList<>();
+        packets.add(PlayerRewriteUtils.createGameMode(packet.getPlayerGameType()));
+        packets.add(PlayerRewriteUtils.createPosition(packet.getPlayerPosition(), rotation, rewriteData.getEntityId()));
+        packets.add(PlayerRewriteUtils.createChunkPublisherUpdate(packet.getPlayerPosition().toInt(), chunkRadius.getRadius()));
+        packets.addAll(PlayerRewriteUtils.createClearWeather());
+        packets.add(PlayerRewriteUtils.createGameRules(rewriteData.getGameRules()));
+        packets.add(PlayerRewriteUtils.createSetDifficulty(packet.getDifficulty()));
+        PlayerRewriteUtils.injectTransferCleanup(this.player, rewriteData.getEntityId(), packets);
 
         ServerConnection oldServer = this.player.getServer();
         oldServer.getInfo().removePlayer(this.player);
@@ -180,12 +178,17 @@ public class SwitchDownstreamHandler extends AbstractDownstreamHandler {
 
         TransferCompleteEvent event = new TransferCompleteEvent(oldServer, server, this.player);
         this.player.getProxy().getEventManager().callEvent(event);
+        this.player.prewarmPredictedServer();
         throw CancelSignalException.CANCEL;
     }
 
     @Override
     public boolean handle(DisconnectPacket packet) {
-        this.client.close();
+        if (this.isPrewarming()) {
+            this.player.discardPrewarmedConnection(this.prewarmedConnection);
+            return false;
+        }
+        this.player.getProxy().getDownstreamClientPool().close(this.client, this.downstream, false);
         this.player.setPendingConnection(null);
         this.player.sendMessage(new TranslationContainer("waterdog.downstream.transfer.failed", this.serverInfo.getServerName(), packet.getKickMessage()));
         return false;
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.protocol;
+
+import com.nukkitx.network.VarInts;
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketCodec;
+import com.nukkitx.protocol.bedrock.BedrockSession;
+import com.nukkitx.protocol.bedrock.packet.UnknownPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Assembles uncompressed batch from packets which should be sent together.
+ * Payloads of raw packets are added to the batch as they are, without copying,
+ * and only decoded packets are serialized using the codec.
+ * All supported protocol versions use raw deflate compression of batches.
+ */
+public class BatchWriter {
+
+    private static final int MAX_COMPONENTS = 1024;
+    private static final int DEFLATE_CHUNK = 8192;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private final BedrockPacketCodec codec;
+    private final BedrockSession session;
+    private final CompositeByteBuf batch;
+    private int packetCount;
+
+    public BatchWriter(BedrockPacketCodec codec, BedrockSession session) {
+        this(codec, session, MAX_COMPONENTS / 2);
+    }
+
+    /**
+     * @param expectedPackets count of packets which will be written, used to size the batch
+     *                        so its components do not have to be consolidated.
+     */
+    public BatchWriter(BedrockPacketCodec codec, BedrockSession session, int expectedPackets) {
+        this.codec = codec;
+        this.session = session;
+        this.batch = ByteBufAllocator.DEFAULT.compositeDirectBuffer(Math.max(MAX_COMPONENTS, 2 * expectedPackets));
+    }
+
+    public void write(BedrockPacket packet) {
+        if (packet instanceof UnknownPacket) {
+            UnknownPacket unknownPacket = (UnknownPacket) packet;
+            this.writeRaw(unknownPacket.getPacketId(), packet.getSenderId(), packet.getClientId(), unknownPacket.getPayload());
+            return;
+        }
+
+        ByteBuf payload = ByteBufAllocator.DEFAULT.ioBuffer();
+        try {
+            this.codec.tryEncode(payload, packet, this.session);
+            this.writeRaw(this.codec.getId(packet), packet.getSenderId(), packet.getClientId(), payload);
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * Appends already encoded packet payload to the batch. Payload is retained and not copied.
+     *
+     * @param packetId id of the packet.
+     * @param senderId sub-client id of the sender.
+     * @param clientId sub-client id of the target.
+     * @param payload  encoded packet body without header.
+     */
+    public void writeRaw(int packetId, int senderId, int clientId, ByteBuf payload) {
+        int header = (packetId & 0x3ff) | ((senderId & 3) << 10) | ((clientId & 3) << 12);
+        ByteBuf prefix = ByteBufAllocator.DEFAULT.ioBuffer(10);
+        VarInts.writeUnsignedInt(prefix, varIntSize(header) + payload.readableBytes());
+        VarInts.writeUnsignedInt(prefix, header);
+
+        this.batch.addComponent(true, prefix);
+        if (payload.isReadable()) {
+            this.batch.addComponent(true, payload.retainedSlice());
+        }
+        this.packetCount++;
+    }
+
+    /**
+     * Compresses assembled batch. Returned buffer must be released by the caller.
+     *
+     * @param level deflate compression level.
+     * @return compressed batch which can be passed to BedrockSession.sendWrapped().
+     */
+    public ByteBuf compress(int level) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+
+        ByteBuf compressed = ByteBufAllocator.DEFAULT.ioBuffer(Math.max(64, this.batch.readableBytes() / 2));
+        try {
+            for (ByteBuffer input : this.batch.nioBuffers()) {
+                deflater.setInput(input);
+                while (!deflater.needsInput()) {
+                    deflate(deflater, compressed);
+                }
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(deflater, compressed);
+            }
+            return compressed;
+        } catch (Throwable t) {
+            compressed.release();
+            throw t;
+        }
+    }
+
+    /**
+     * Compresses assembled batch. Batches smaller than the threshold are written with level 0,
+     * because deflating them does not save any bandwidth. Returned buffer must be released by the caller.
+     *
+     * @param level     deflate compression level.
+     * @param threshold size of uncompressed batch in bytes below which batch is not compressed.
+     */
+    public ByteBuf compress(int level, int threshold) {
+        return this.compress(this.batch.readableBytes() < threshold ? Deflater.NO_COMPRESSION : level);
+    }
+
+    private static void deflate(Deflater deflater, ByteBuf output) {
+        output.ensureWritable(DEFLATE_CHUNK);
+        int writerIndex = output.writerIndex();
+        int written = deflater.deflate(output.internalNioBuffer(writerIndex, output.writableBytes()));
+        output.writerIndex(writerIndex + written);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public int getPacketCount() {
+        return this.packetCount;
+    }
+
+    /**
+     * @return size of the uncompressed batch in bytes.
+     */
+    public int getSize() {
+        return this.batch.readableBytes();
+    }
+
+    public void release() {
+        this.batch.release();
+    }
+}
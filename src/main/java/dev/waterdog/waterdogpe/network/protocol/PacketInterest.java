@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.protocol;
+
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
+import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+
+/**
+ * Precomputed set of packet types some handler is interested in.
+ * Used by the batch bridges to forward packets nobody subscribes to without dispatching them.
+ */
+public final class PacketInterest {
+
+    private static final BedrockPacketType[] TYPES = BedrockPacketType.values();
+
+    public static final PacketInterest NONE = new PacketInterest(new boolean[TYPES.length]);
+    public static final PacketInterest ALL = all();
+
+    private static final ClassValue<PacketInterest> handlerInterest = new ClassValue<PacketInterest>() {
+        @Override
+        protected PacketInterest computeValue(Class<?> type) {
+            return scanHandler(type);
+        }
+    };
+
+    private final boolean[] types;
+
+    private PacketInterest(boolean[] types) {
+        this.types = types;
+    }
+
+    private static PacketInterest all() {
+        boolean[] types = new boolean[TYPES.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = true;
+        }
+        return new PacketInterest(types);
+    }
+
+    public static PacketInterest of(BedrockPacketType... packetTypes) {
+        boolean[] types = new boolean[TYPES.length];
+        for (BedrockPacketType type : packetTypes) {
+            types[type.ordinal()] = true;
+        }
+        return new PacketInterest(types);
+    }
+
+    /**
+     * Creates interest from names of packet types. Unknown names are ignored.
+     *
+     * @param typeNames names of BedrockPacketType constants.
+     * @return interest containing all known types.
+     */
+    public static PacketInterest of(Collection<String> typeNames) {
+        boolean[] types = new boolean[TYPES.length];
+        for (String typeName : typeNames) {
+            try {
+                types[BedrockPacketType.valueOf(typeName.toUpperCase()).ordinal()] = true;
+            } catch (IllegalArgumentException e) {
+                // Type might not exist in this protocol library version
+            }
+        }
+        return new PacketInterest(types);
+    }
+
+    /**
+     * Returns cached interest of the handler class.
+     * Handler is interested in every packet type for which it overrides handle() method of BedrockPacketHandler.
+     *
+     * @param handlerClass class implementing BedrockPacketHandler.
+     * @return interest of the handler class.
+     */
+    public static PacketInterest of(Class<? extends BedrockPacketHandler> handlerClass) {
+        return handlerInterest.get(handlerClass);
+    }
+
+    private static PacketInterest scanHandler(Class<?> handlerClass) {
+        Method[] methods;
+        try {
+            methods = handlerClass.getMethods();
+        } catch (SecurityException | LinkageError e) {
+            // Handler class can not be scanned, so we must not skip anything
+            return ALL;
+        }
+
+        boolean[] types = new boolean[TYPES.length];
+        for (Method method : methods) {
+            if (!method.getName().equals("handle") || method.getParameterCount() != 1 || method.getDeclaringClass().isInterface()) {
+                continue;
+            }
+
+            Class<?> packetClass = method.getParameterTypes()[0];
+            if (!BedrockPacket.class.isAssignableFrom(packetClass)) {
+                continue;
+            }
+
+            if (Modifier.isAbstract(packetClass.getModifiers())) {
+                // Handler accepts any packet
+                return ALL;
+            }
+
+            try {
+                BedrockPacket packet = (BedrockPacket) packetClass.getDeclaredConstructor().newInstance();
+                types[packet.getPacketType().ordinal()] = true;
+            } catch (ReflectiveOperationException e) {
+                // We can not determine type of the packet, so we must not skip anything
+                return ALL;
+            }
+        }
+        return new PacketInterest(types);
+    }
+
+    public PacketInterest union(PacketInterest other) {
+        if (other == this || other == NONE) {
+            return this;
+        }
+
+        boolean[] types = new boolean[TYPES.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = this.types[i] || other.types[i];
+        }
+        return new PacketInterest(types);
+    }
+
+    public boolean contains(BedrockPacketType type) {
+        return this.types[type.ordinal()];
+    }
+
+    public boolean isEmpty() {
+        for (boolean type : this.types) {
+            if (type) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.protocol;
+
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketCodec;
+import com.nukkitx.protocol.bedrock.BedrockSession;
+import com.nukkitx.protocol.bedrock.packet.UnknownPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Helpers for packets which are not registered in the fast codec and are passed rawly.
+ * Such packets are decoded and encoded using the default codec of the protocol version.
+ */
+public class PacketUtils {
+
+    /**
+     * Encodes packet using default codec of the protocol version.
+     * Result can be sent using session with fast codec which does not contain serializer of the packet.
+     *
+     * @param packet   packet to be encoded.
+     * @param protocol protocol version of the session.
+     * @param session  session which the packet will be sent to.
+     * @return raw packet holding encoded payload.
+     */
+    public static UnknownPacket encodeRaw(BedrockPacket packet, ProtocolVersion protocol, BedrockSession session) {
+        BedrockPacketCodec codec = protocol.getDefaultCodec();
+        ByteBuf payload = ByteBufAllocator.DEFAULT.ioBuffer();
+        try {
+            codec.tryEncode(payload, packet, session);
+        } catch (Throwable t) {
+            payload.release();
+            throw t;
+        }
+
+        UnknownPacket unknownPacket = new UnknownPacket();
+        unknownPacket.setSenderId(packet.getSenderId());
+        unknownPacket.setClientId(packet.getClientId());
+        unknownPacket.setPacketId(codec.getId(packet));
+        unknownPacket.setPayload(payload);
+        return unknownPacket;
+    }
+
+    /**
+     * Prepares packet to be sent through session which uses fast codec.
+     * Packets which are passed rawly by the fast codec are encoded using default codec.
+     *
+     * @param packet   packet which is going to be sent.
+     * @param protocol protocol version of the session.
+     * @param session  session to which the packet is sent.
+     * @return the packet itself or encoded raw packet.
+     */
+    public static BedrockPacket encodeIfRaw(BedrockPacket packet, ProtocolVersion protocol, BedrockSession session) {
+        return protocol != null && protocol.isRawPacket(packet) ? encodeRaw(packet, protocol, session) : packet;
+    }
+
+    /**
+     * Decodes raw packet using default codec of the protocol version. Payload of the raw packet is not consumed or released.
+     *
+     * @param packet   raw packet which was not decoded by the fast codec.
+     * @param protocol protocol version of the session.
+     * @param session  session which received the packet.
+     * @return decoded packet.
+     */
+    public static BedrockPacket decodeRaw(UnknownPacket packet, ProtocolVersion protocol, BedrockSession session) {
+        BedrockPacket decoded = protocol.getDefaultCodec().tryDecode(packet.getPayload().duplicate(), packet.getPacketId(), session);
+        decoded.setPacketId(packet.getPacketId());
+        decoded.setSenderId(packet.getSenderId());
+        decoded.setClientId(packet.getClientId());
+        return decoded;
+    }
+}
@@ -15,7 +15,9 @@
 
 package dev.waterdog.waterdogpe.network.protocol;
 
+import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.BedrockPacketCodec;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
 import com.nukkitx.protocol.bedrock.v313.Bedrock_v313;
 import com.nukkitx.protocol.bedrock.v332.Bedrock_v332;
 import com.nukkitx.protocol.bedrock.v340.Bedrock_v340;
@@ -95,6 +97,21 @@ public enum ProtocolVersion {
         return this.bedrockCodec == null ? this.defaultCodec : this.bedrockCodec.getPacketCodec();
     }
 
+    /**
+     * @param packetId id of packet which was not decoded by fast codec.
+     * @return type of the packet if default codec can decode it, otherwise null.
+     */
+    public BedrockPacketType getRawPacketType(int packetId) {
+        return this.bedrockCodec == null ? null : this.bedrockCodec.getRawPacketType(packetId);
+    }
+
+    /**
+     * @return true if the packet is not registered in fast codec and has to be encoded by default codec.
+     */
+    public boolean isRawPacket(BedrockPacket packet) {
+        return this.bedrockCodec != null && this.bedrockCodec.isRawPacket(packet);
+    }
+
     public void setBedrockCodec(BedrockCodec bedrockCodec) {
         this.bedrockCodec = bedrockCodec;
     }
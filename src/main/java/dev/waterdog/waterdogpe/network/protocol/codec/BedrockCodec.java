@@ -16,14 +16,29 @@
 package dev.waterdog.waterdogpe.network.protocol.codec;
 
 import com.google.common.base.Preconditions;
+import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.BedrockPacketCodec;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
 import dev.waterdog.waterdogpe.ProxyServer;
 import dev.waterdog.waterdogpe.event.defaults.ProtocolCodecRegisterEvent;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 public abstract class BedrockCodec {
 
     private BedrockPacketCodec packetCodec;
+    /**
+     * Types of packets which are not decoded by this codec, but are known to the default codec, mapped by packet id.
+     */
+    private final Int2ObjectMap<BedrockPacketType> rawPacketTypes = new Int2ObjectOpenHashMap<>();
+    private final Set<Class<? extends BedrockPacket>> rawPacketClasses = new ReferenceOpenHashSet<>();
 
     public BedrockCodec() {
     }
@@ -73,9 +88,34 @@ public abstract class BedrockCodec {
         }
 
         this.setPacketCodec(builder.build());
+        this.initRawPackets(protocol);
         return true;
     }
 
+    private void initRawPackets(ProtocolVersion protocol) {
+        List<Class<? extends BedrockPacket>> rawPackets = new ArrayList<>();
+        this.collectRawPackets(rawPackets);
+
+        for (Class<? extends BedrockPacket> packetClass : rawPackets) {
+            BedrockPacket packet;
+            try {
+                packet = packetClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create raw packet " + packetClass.getSimpleName(), e);
+            }
+
+            try {
+                this.packetCodec.getId(packet);
+                // Packet was registered again by plugin, it will be always decoded
+                continue;
+            } catch (IllegalArgumentException e) {
+                // Packet is not registered in this codec
+            }
+            this.rawPacketTypes.put(protocol.getDefaultCodec().getId(packet), packet.getPacketType());
+            this.rawPacketClasses.add(packetClass);
+        }
+    }
+
     /**
      * This method should be implemented in parent.
      * Some common packets may be implemented here later.
@@ -90,6 +130,32 @@ public abstract class BedrockCodec {
         // Used to register packets related command injections
     }
 
+    /**
+     * Collects packets which are intentionally not registered by buildCodec(), because proxy can process them in raw form.
+     * Such packets are decoded using default codec only if some plugin packet handler is interested in them.
+     *
+     * @param packets collection to which classes of raw packets should be added.
+     */
+    protected void collectRawPackets(Collection<Class<? extends BedrockPacket>> packets) {
+        // Packets which are passed rawly are defined by child codecs
+    }
+
+    /**
+     * @param packetId id of packet which was not decoded by this codec.
+     * @return type of the packet, or null if the packet is not one of raw packets.
+     */
+    public BedrockPacketType getRawPacketType(int packetId) {
+        return this.rawPacketTypes.get(packetId);
+    }
+
+    /**
+     * @param packet packet which is going to be sent.
+     * @return true if the packet is one of raw packets and can not be encoded by this codec.
+     */
+    public boolean isRawPacket(BedrockPacket packet) {
+        return this.rawPacketClasses.contains(packet.getClass());
+    }
+
     public abstract ProtocolVersion getProtocol();
 
     public BedrockPacketCodec getPacketCodec() {
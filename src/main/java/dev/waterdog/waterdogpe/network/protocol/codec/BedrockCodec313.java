@@ -15,6 +15,7 @@
 
 package dev.waterdog.waterdogpe.network.protocol.codec;
 
+import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.BedrockPacketCodec;
 import com.nukkitx.protocol.bedrock.packet.*;
 import com.nukkitx.protocol.bedrock.v291.serializer.*;
@@ -22,6 +23,8 @@ import com.nukkitx.protocol.bedrock.v313.BedrockPacketHelper_v313;
 import com.nukkitx.protocol.bedrock.v313.serializer.*;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
 
+import java.util.Collection;
+
 public class BedrockCodec313 extends BedrockCodec {
 
     @Override
@@ -54,7 +57,6 @@ public class BedrockCodec313 extends BedrockCodec {
         builder.registerPacket(RemoveEntityPacket.class, RemoveEntitySerializer_v291.INSTANCE, 14);
         builder.registerPacket(AddItemEntityPacket.class, AddItemEntitySerializer_v291.INSTANCE, 15);
         builder.registerPacket(TakeItemEntityPacket.class, TakeItemEntitySerializer_v291.INSTANCE, 17);
-        builder.registerPacket(MoveEntityAbsolutePacket.class, MoveEntityAbsoluteSerializer_v291.INSTANCE, 18);
         builder.registerPacket(MovePlayerPacket.class, MovePlayerSerializer_v291.INSTANCE, 19);
         builder.registerPacket(UpdateBlockPacket.class, UpdateBlockSerializer_v291.INSTANCE, 21);
         builder.registerPacket(AddPaintingPacket.class, AddPaintingSerializer_v291.INSTANCE, 22);
@@ -67,8 +69,6 @@ public class BedrockCodec313 extends BedrockCodec {
         builder.registerPacket(MobArmorEquipmentPacket.class, MobArmorEquipmentSerializer_v291.INSTANCE, 32);
         builder.registerPacket(InteractPacket.class, InteractSerializer_v291.INSTANCE, 33);
         builder.registerPacket(PlayerActionPacket.class, PlayerActionSerializer_v291.INSTANCE, 36);
-        builder.registerPacket(SetEntityDataPacket.class, SetEntityDataSerializer_v291.INSTANCE, 39);
-        builder.registerPacket(SetEntityMotionPacket.class, SetEntityMotionSerializer_v291.INSTANCE, 40);
         builder.registerPacket(SetEntityLinkPacket.class, SetEntityLinkSerializer_v291.INSTANCE, 41);
         builder.registerPacket(AnimatePacket.class, AnimateSerializer_v291.INSTANCE, 44);
         builder.registerPacket(RespawnPacket.class, RespawnSerializer_v291.INSTANCE, 45);
@@ -88,7 +88,6 @@ public class BedrockCodec313 extends BedrockCodec {
         builder.registerPacket(RemoveObjectivePacket.class, RemoveObjectiveSerializer_v291.INSTANCE, 106);
         builder.registerPacket(SetDisplayObjectivePacket.class, SetDisplayObjectiveSerializer_v291.INSTANCE, 107);
         builder.registerPacket(SetScorePacket.class, SetScoreSerializer_v291.INSTANCE, 108);
-        builder.registerPacket(MoveEntityDeltaPacket.class, MoveEntityDeltaSerializer_v291.INSTANCE, 111);
         builder.registerPacket(SetScoreboardIdentityPacket.class, SetScoreboardIdentitySerializer_v291.INSTANCE, 112);
         builder.registerPacket(SetLocalPlayerAsInitializedPacket.class, SetLocalPlayerAsInitializedSerializer_v291.INSTANCE, 113);
         builder.registerPacket(NetworkStackLatencyPacket.class, NetworkStackLatencySerializer_v291.INSTANCE, 115);
@@ -96,6 +95,16 @@ public class BedrockCodec313 extends BedrockCodec {
         builder.registerPacket(NetworkChunkPublisherUpdatePacket.class, NetworkChunkPublisherUpdateSerializer_v313.INSTANCE, 121);
     }
 
+    @Override
+    protected void collectRawPackets(Collection<Class<? extends BedrockPacket>> packets) {
+        super.collectRawPackets(packets);
+        // EntityMap rewrites runtime entity ids of these packets directly in the raw payload.
+        packets.add(MoveEntityAbsolutePacket.class);
+        packets.add(SetEntityDataPacket.class);
+        packets.add(SetEntityMotionPacket.class);
+        packets.add(MoveEntityDeltaPacket.class);
+    }
+
     @Override
     public void registerCommands(BedrockPacketCodec.Builder builder) {
         builder.registerPacket(AvailableCommandsPacket.class, AvailableCommandsSerializer_v291.INSTANCE, 76);
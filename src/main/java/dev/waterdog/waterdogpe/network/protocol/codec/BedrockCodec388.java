@@ -56,9 +56,6 @@ public class BedrockCodec388 extends BedrockCodec361 {
         builder.deregisterPacket(PlayerListPacket.class);
         builder.registerPacket(PlayerListPacket.class, PlayerListSerializer_v388.INSTANCE, 63);
 
-        builder.deregisterPacket(MoveEntityDeltaPacket.class);
-        builder.registerPacket(MoveEntityDeltaPacket.class, MoveEntityDeltaSerializer_v388.INSTANCE, 111);
-
         builder.registerPacket(EmotePacket.class, EmoteSerializer_v388.INSTANCE, 138);
     }
 
@@ -15,12 +15,17 @@
 
 package dev.waterdog.waterdogpe.network.protocol.codec;
 
+import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.BedrockPacketCodec;
 import com.nukkitx.protocol.bedrock.packet.*;
 import com.nukkitx.protocol.bedrock.v419.BedrockPacketHelper_v419;
 import com.nukkitx.protocol.bedrock.v419.serializer.*;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 public class BedrockCodec419 extends BedrockCodec408 {
 
     @Override
@@ -45,10 +50,26 @@ public class BedrockCodec419 extends BedrockCodec408 {
         builder.deregisterPacket(UpdateAttributesPacket.class);
         builder.registerPacket(UpdateAttributesPacket.class, UpdateAttributesSerializer_v419.INSTANCE, 29);
 
-        builder.deregisterPacket(SetEntityDataPacket.class);
-        builder.registerPacket(SetEntityDataPacket.class, SetEntityDataSerializer_v419.INSTANCE, 39);
+        List<Class<? extends BedrockPacket>> rawPackets = new ArrayList<>();
+        this.collectBlockPackets(rawPackets);
+        for (Class<? extends BedrockPacket> packetClass : rawPackets) {
+            builder.deregisterPacket(packetClass);
+        }
+    }
+
+    @Override
+    protected void collectRawPackets(Collection<Class<? extends BedrockPacket>> packets) {
+        super.collectRawPackets(packets);
+        this.collectBlockPackets(packets);
+    }
 
-        builder.deregisterPacket(MoveEntityDeltaPacket.class);
-        builder.registerPacket(MoveEntityDeltaPacket.class, MoveEntityDeltaSerializer_v419.INSTANCE, 111);
+    private void collectBlockPackets(Collection<Class<? extends BedrockPacket>> packets) {
+        // Since 1.16.100 block runtime ids are defined by client, BlockMapSimple does not rewrite them.
+        // Pass block and sound packets rawly instead of decoding and encoding them again.
+        packets.add(LevelChunkPacket.class);
+        packets.add(UpdateBlockPacket.class);
+        packets.add(LevelSoundEventPacket.class);
+        packets.add(LevelSoundEvent1Packet.class);
+        packets.add(LevelSoundEvent2Packet.class);
     }
 }
@@ -17,6 +17,7 @@ package dev.waterdog.waterdogpe.network.rewrite;
 
 import com.nukkitx.network.VarInts;
 import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
 import com.nukkitx.protocol.bedrock.data.LevelEventType;
 import com.nukkitx.protocol.bedrock.data.SoundEvent;
 import com.nukkitx.protocol.bedrock.data.entity.EntityData;
@@ -46,7 +47,8 @@ public class BlockMap implements BedrockPacketHandler {
     }
 
     public boolean doRewrite(BedrockPacket packet) {
-        return this.player.canRewrite() && packet.handle(this);
+        // Palettes are equal, all packets would be passed unchanged
+        return this.player.canRewrite() && !this.rewrite.isBlockRewriteIdentity() && packet.handle(this);
     }
 
     protected int translateId(int runtimeId) {
@@ -55,17 +57,42 @@ public class BlockMap implements BedrockPacketHandler {
 
     @Override
     public boolean handle(LevelChunkPacket packet) {
+        return this.rewriteChunk(packet, this.getPaletteRewrite());
+    }
+
+    /**
+     * Rewrites block runtime ids in chunk data using given palette rewrite.
+     * Used by chunk workers which must use palette rewrite of the server that sent the chunk.
+     *
+     * @return if chunk data was changed.
+     */
+    public boolean rewriteChunk(LevelChunkPacket packet, BlockPaletteRewrite paletteRewrite) {
         byte[] oldData = packet.getData();
+        ChunkRewriteCache cache = this.player.getProxy().getChunkRewriteCache();
+        ChunkRewriteCache.Key cacheKey = null;
+        if (cache.isEnabled()) {
+            cacheKey = cache.createKey(oldData, packet.getSubChunksLength(), paletteRewrite);
+            byte[] cachedData = cache.get(cacheKey);
+            if (cachedData != null) {
+                packet.setData(this.shareChunkData(cachedData));
+                return true;
+            }
+        }
+
         ByteBuf from = AbstractByteBufAllocator.DEFAULT.ioBuffer(oldData.length);
         ByteBuf to = AbstractByteBufAllocator.DEFAULT.ioBuffer(oldData.length);
 
         try {
             from.writeBytes(oldData);
-            boolean success = this.rewriteChunkData(from, to, packet.getSubChunksLength());
+            boolean success = this.rewriteChunkData(from, to, packet.getSubChunksLength(), paletteRewrite);
             if (success) {
                 to.writeBytes(from); // Copy the rest
                 byte[] newData = new byte[to.readableBytes()];
                 to.readBytes(newData);
+                if (cacheKey != null) {
+                    cache.put(cacheKey, newData);
+                    newData = this.shareChunkData(newData);
+                }
                 packet.setData(newData);
             }
             return success;
@@ -75,7 +102,18 @@ public class BlockMap implements BedrockPacketHandler {
         }
     }
 
-    private boolean rewriteChunkData(ByteBuf from, ByteBuf to, int sections) {
+    /**
+     * Cached chunk data are shared by all players and must not be modified.
+     * Plugin handlers receive packet after it was rewritten and are free to modify its data, so they get a copy.
+     */
+    private byte[] shareChunkData(byte[] cachedData) {
+        if (this.player.getPluginDownstreamHandlers().isInterested(BedrockPacketType.LEVEL_CHUNK)) {
+            return cachedData.clone();
+        }
+        return cachedData;
+    }
+
+    private boolean rewriteChunkData(ByteBuf from, ByteBuf to, int sections, BlockPaletteRewrite paletteRewrite) {
         for (int section = 0; section < sections; section++) {
             int chunkVersion = from.readUnsignedByte();
             to.writeByte(chunkVersion);
@@ -104,7 +142,7 @@ public class BlockMap implements BedrockPacketHandler {
 
                         for (int i = 0; i < nPaletteEntries; i++) {
                             int runtimeId = VarInts.readInt(from);
-                            VarInts.writeInt(to, this.translateId(runtimeId));
+                            VarInts.writeInt(to, paletteRewrite.fromDownstream(runtimeId));
                         }
                     }
                     break;
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.rewrite;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import dev.waterdog.waterdogpe.network.rewrite.types.BlockPaletteRewrite;
+import dev.waterdog.waterdogpe.utils.types.LRUCache;
+
+/**
+ * Bounded cache of rewritten chunk data shared by all players.
+ * Players on the same downstream receive identical chunks, which would be otherwise rewritten for every player again.
+ * Entries are keyed by digest of original chunk data and palette rewrite and evicted in LRU order
+ * once the total size of cached data exceeds the limit.
+ * Cached arrays are shared between packets and must not be modified. BlockMap passes copies of cached data
+ * to packets which are exposed to plugin handlers.
+ */
+public class ChunkRewriteCache {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    /**
+     * Approximate size of entry and key objects which is added to size of cached data.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final LRUCache<Key, byte[]> entries;
+
+    /**
+     * @param maxSize maximum size of cached data in bytes. Cache is disabled if value is not positive.
+     */
+    public ChunkRewriteCache(long maxSize) {
+        this.entries = new LRUCache<>(maxSize, data -> data.length + ENTRY_OVERHEAD);
+    }
+
+    public boolean isEnabled() {
+        return this.entries.getMaxWeight() > 0;
+    }
+
+    public Key createKey(byte[] data, int subChunks, BlockPaletteRewrite rewrite) {
+        return new Key(HASH_FUNCTION.hashBytes(data), data.length, subChunks, rewrite);
+    }
+
+    /**
+     * @return rewritten chunk data or null if chunk is not cached.
+     */
+    public byte[] get(Key key) {
+        return this.entries.get(key);
+    }
+
+    public void put(Key key, byte[] data) {
+        this.entries.put(key, data);
+    }
+
+    public void clear() {
+        this.entries.clear();
+    }
+
+    public long getMaxSize() {
+        return this.entries.getMaxWeight();
+    }
+
+    /**
+     * @return approximate memory used by cached entries in bytes.
+     */
+    public long getSize() {
+        return this.entries.getWeight();
+    }
+
+    public int getEntryCount() {
+        return this.entries.getEntryCount();
+    }
+
+    public long getHits() {
+        return this.entries.getHits();
+    }
+
+    public long getMisses() {
+        return this.entries.getMisses();
+    }
+
+    public long getEvictions() {
+        return this.entries.getEvictions();
+    }
+
+    public double getHitRate() {
+        return this.entries.getHitRate();
+    }
+
+    public static final class Key {
+        private final HashCode digest;
+        private final int length;
+        private final int subChunks;
+        private final BlockPaletteRewrite rewrite;
+
+        private Key(HashCode digest, int length, int subChunks, BlockPaletteRewrite rewrite) {
+            this.digest = digest;
+            this.length = length;
+            this.subChunks = subChunks;
+            this.rewrite = rewrite;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            // Rewrites are cached per palette pair, so we can compare them by reference
+            return this.rewrite == other.rewrite && this.length == other.length &&
+                    this.subChunks == other.subChunks && this.digest.equals(other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.digest.hashCode() + System.identityHashCode(this.rewrite);
+        }
+    }
+}
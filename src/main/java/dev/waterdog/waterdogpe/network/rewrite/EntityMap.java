@@ -15,6 +15,7 @@
 
 package dev.waterdog.waterdogpe.network.rewrite;
 
+import com.nukkitx.network.VarInts;
 import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.data.entity.EntityLinkData;
 import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
@@ -22,6 +23,7 @@ import com.nukkitx.protocol.bedrock.packet.*;
 import dev.waterdog.waterdogpe.network.rewrite.types.RewriteData;
 import dev.waterdog.waterdogpe.player.PlayerRewriteUtils;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
+import io.netty.buffer.ByteBuf;
 
 import java.util.ListIterator;
 
@@ -30,6 +32,15 @@ import java.util.ListIterator;
  */
 public class EntityMap implements BedrockPacketHandler {
 
+    /**
+     * Ids of packets which are passed rawly by fast codec and start with runtime entity id.
+     * These ids did not change in any supported protocol version.
+     */
+    private static final int MOVE_ENTITY_ABSOLUTE = 18;
+    private static final int SET_ENTITY_DATA = 39;
+    private static final int SET_ENTITY_MOTION = 40;
+    private static final int MOVE_ENTITY_DELTA = 111;
+
     private final ProxiedPlayer player;
     private final RewriteData rewrite;
 
@@ -39,7 +50,74 @@ public class EntityMap implements BedrockPacketHandler {
     }
 
     public boolean doRewrite(BedrockPacket packet) {
-        return this.player.canRewrite() && packet.handle(this);
+        return this.player.canRewrite() && !this.rewrite.isEntityIdIdentity() && packet.handle(this);
+    }
+
+    /**
+     * Rewrites entity ids of packets which were not decoded by codec.
+     * Only the leading runtime entity id is parsed and the rest of payload is left untouched.
+     *
+     * @return if packet was changed.
+     */
+    public boolean doRewrite(UnknownPacket packet) {
+        if (!this.player.canRewrite() || this.rewrite.isEntityIdIdentity()) {
+            return false;
+        }
+
+        switch (packet.getPacketId()) {
+            case MOVE_ENTITY_ABSOLUTE:
+            case SET_ENTITY_DATA:
+            case SET_ENTITY_MOTION:
+            case MOVE_ENTITY_DELTA:
+                return this.rewriteRuntimeId(packet);
+            default:
+                return false;
+        }
+    }
+
+    private boolean rewriteRuntimeId(UnknownPacket packet) {
+        ByteBuf payload = packet.getPayload();
+        int readerIndex = payload.readerIndex();
+        long runtimeId = VarInts.readUnsignedLong(payload);
+        int idLength = payload.readerIndex() - readerIndex;
+        payload.readerIndex(readerIndex);
+
+        long rewrittenId = PlayerRewriteUtils.rewriteId(runtimeId, this.rewrite.getEntityId(), this.rewrite.getOriginalEntityId());
+        if (rewrittenId == runtimeId) {
+            return false;
+        }
+
+        int rewrittenLength = unsignedVarLongSize(rewrittenId);
+        if (rewrittenLength == idLength) {
+            // Payload slice is owned by this packet only, so id can be replaced in place
+            setUnsignedVarLong(payload, readerIndex, rewrittenId);
+            return true;
+        }
+
+        int remaining = payload.readableBytes() - idLength;
+        ByteBuf rewritten = payload.alloc().ioBuffer(rewrittenLength + remaining);
+        VarInts.writeUnsignedLong(rewritten, rewrittenId);
+        rewritten.writeBytes(payload, readerIndex + idLength, remaining);
+        packet.setPayload(rewritten);
+        payload.release();
+        return true;
+    }
+
+    private static int unsignedVarLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void setUnsignedVarLong(ByteBuf buffer, int index, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.setByte(index++, (int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.setByte(index, (int) value);
     }
 
     @Override
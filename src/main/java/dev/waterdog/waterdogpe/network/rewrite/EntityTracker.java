@@ -41,13 +41,13 @@ public class EntityTracker implements BedrockPacketHandler {
 
     @Override
     public boolean handle(AddPlayerPacket packet) {
-        this.player.getEntities().add(packet.getRuntimeEntityId());
+        this.player.getTrackingState().addEntity(packet.getRuntimeEntityId());
         return false;
     }
 
     @Override
     public boolean handle(AddEntityPacket packet) {
-        this.player.getEntities().add(packet.getRuntimeEntityId());
+        this.player.getTrackingState().addEntity(packet.getRuntimeEntityId());
         for (EntityLinkData entityLink : packet.getEntityLinks()) {
             this.handleEntityLink(entityLink);
         }
@@ -56,19 +56,19 @@ public class EntityTracker implements BedrockPacketHandler {
 
     @Override
     public boolean handle(AddItemEntityPacket packet) {
-        this.player.getEntities().add(packet.getRuntimeEntityId());
+        this.player.getTrackingState().addEntity(packet.getRuntimeEntityId());
         return false;
     }
 
     @Override
     public boolean handle(AddPaintingPacket packet) {
-        this.player.getEntities().add(packet.getRuntimeEntityId());
+        this.player.getTrackingState().addEntity(packet.getRuntimeEntityId());
         return false;
     }
 
     @Override
     public boolean handle(RemoveEntityPacket packet) {
-        this.player.getEntities().remove(packet.getUniqueEntityId());
+        this.player.getTrackingState().removeEntity(packet.getUniqueEntityId());
         return false;
     }
 
@@ -77,9 +77,9 @@ public class EntityTracker implements BedrockPacketHandler {
         List<PlayerListPacket.Entry> entries = packet.getEntries();
         for (PlayerListPacket.Entry entry : entries) {
             if (packet.getAction() == PlayerListPacket.Action.ADD) {
-                this.player.getPlayers().add(entry.getUuid());
+                this.player.getTrackingState().addPlayer(entry.getUuid());
             } else if (packet.getAction() == PlayerListPacket.Action.REMOVE) {
-                this.player.getPlayers().remove(entry.getUuid());
+                this.player.getTrackingState().removePlayer(entry.getUuid());
             }
         }
         return false;
@@ -93,9 +93,9 @@ public class EntityTracker implements BedrockPacketHandler {
 
     private void handleEntityLink(EntityLinkData entityLink) {
         if (entityLink.getType() == EntityLinkData.Type.REMOVE) {
-            this.player.getEntityLinks().remove(entityLink.getFrom());
+            this.player.getTrackingState().removeEntityLink(entityLink.getFrom());
         } else {
-            this.player.getEntityLinks().put(entityLink.getFrom(), entityLink.getTo());
+            this.player.getTrackingState().addEntityLink(entityLink.getFrom(), entityLink.getTo());
         }
     }
 }
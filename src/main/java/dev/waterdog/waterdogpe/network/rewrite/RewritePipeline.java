@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.rewrite;
+
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
+import dev.waterdog.waterdogpe.network.protocol.PacketInterest;
+import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
+
+/**
+ * Precomputed mask of rewrite visitors which have to be called for each packet type.
+ * Bridges do single lookup per packet and call only the visitors from the mask,
+ * so EntityMap, EntityTracker and BlockMap are not dispatched for packet types they do not handle.
+ * Rewriting itself still goes through the packet handler visitors, this only gates which of them are called.
+ * The table is same for all protocols, only block rewrite is used by older protocols alone.
+ */
+public class RewritePipeline {
+
+    public static final int ENTITY_REWRITE = 1;
+    public static final int ENTITY_TRACK = 1 << 1;
+    public static final int BLOCK_REWRITE = 1 << 2;
+
+    private static final byte[] STEPS = createSteps();
+
+    private static final RewritePipeline BLOCK_PIPELINE = new RewritePipeline(true);
+    private static final RewritePipeline DEFAULT_PIPELINE = new RewritePipeline(false);
+
+    private static byte[] createSteps() {
+        PacketInterest entityRewrite = PacketInterest.of(EntityMap.class);
+        PacketInterest entityTrack = PacketInterest.of(EntityTracker.class);
+        PacketInterest blockRewrite = PacketInterest.of(BlockMap.class);
+
+        BedrockPacketType[] types = BedrockPacketType.values();
+        byte[] steps = new byte[types.length];
+        for (BedrockPacketType type : types) {
+            int step = 0;
+            if (entityRewrite.contains(type)) {
+                step |= ENTITY_REWRITE;
+            }
+            if (entityTrack.contains(type)) {
+                step |= ENTITY_TRACK;
+            }
+            if (blockRewrite.contains(type)) {
+                step |= BLOCK_REWRITE;
+            }
+            steps[type.ordinal()] = (byte) step;
+        }
+        return steps;
+    }
+
+    private final int stepMask;
+
+    private RewritePipeline(boolean rewriteBlocks) {
+        this.stepMask = rewriteBlocks ? ~0 : ~BLOCK_REWRITE;
+    }
+
+    public static RewritePipeline get(ProtocolVersion protocol) {
+        // Starting with 419 server does not send vanilla blocks to client and BlockMapSimple is used
+        return protocol.isBeforeOrEqual(ProtocolVersion.MINECRAFT_PE_1_16_20) ? BLOCK_PIPELINE : DEFAULT_PIPELINE;
+    }
+
+    /**
+     * @param type type of the packet.
+     * @return bit mask of rewrite visitors which must be called for the packet type.
+     */
+    public int getSteps(BedrockPacketType type) {
+        return STEPS[type.ordinal()] & this.stepMask;
+    }
+
+    public boolean hasSteps(BedrockPacketType type) {
+        return this.getSteps(type) != 0;
+    }
+}
@@ -15,26 +15,49 @@
 
 package dev.waterdog.waterdogpe.network.rewrite.types;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.nukkitx.nbt.NbtList;
 import com.nukkitx.nbt.NbtMap;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ShortLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ShortMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.shorts.Short2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Class used to map Block Palettes, as some server-softwares are randomizing them.
  * Prevents glitches with blocks.
  */
 public class BlockPalette {
 
-    private static final Int2ObjectMap<BlockPalette> paletteCache = new Int2ObjectOpenHashMap<>();
+    /**
+     * Palettes are cached by digest of their content, so different palettes never share cache entry.
+     */
+    private static final Map<HashCode, BlockPalette> paletteCache = new ConcurrentHashMap<>();
+    /**
+     * Same block states are present in palettes of multiple protocol versions and servers.
+     */
+    private static final Interner<BlockPair> blockPairs = Interners.newWeakInterner();
+
     private final Object2ShortMap<BlockPair> entryToId = new Object2ShortLinkedOpenHashMap<>();
     private final Short2ObjectMap<BlockPair> idToEntry = new Short2ObjectLinkedOpenHashMap<>();
+    /**
+     * Rewrites from this palette to upstream palettes. Palettes are cached, so rewrite is shared by all players
+     * which switch between the same pair of palettes.
+     */
+    private final Reference2ObjectMap<BlockPalette, BlockPaletteRewrite> rewriteCache = new Reference2ObjectOpenHashMap<>();
 
     public BlockPalette(NbtList<NbtMap> paletteData, ProtocolVersion protocol) {
         short id = 0;
@@ -45,25 +68,99 @@ public class BlockPalette {
     }
 
     public static BlockPalette getPalette(NbtList<NbtMap> paletteData, ProtocolVersion protocol) {
-        int hashId = paletteData.hashCode();
-        if (paletteCache.containsKey(hashId)) {
-            return paletteCache.get(hashId);
+        return paletteCache.computeIfAbsent(digest(paletteData), key -> new BlockPalette(paletteData, protocol));
+    }
+
+    /**
+     * Creates digest of block names and states in the palette.
+     * Every string and container is prefixed by its length, so different splits of the same input produce different digest.
+     */
+    private static HashCode digest(NbtList<NbtMap> paletteData) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(paletteData.size());
+        for (NbtMap item : paletteData) {
+            NbtMap block = item.getCompound("block");
+            putString(hasher, block.getString("name"));
+            putValue(hasher, block.getCompound("states"));
         }
+        return hasher.hash();
+    }
 
-        BlockPalette palette = new BlockPalette(paletteData, protocol);
-        paletteCache.put(hashId, palette);
-        return palette;
+    private static void putValue(Hasher hasher, Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            hasher.putByte((byte) 'm').putInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                putString(hasher, String.valueOf(entry.getKey()));
+                putValue(hasher, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            hasher.putByte((byte) 'l').putInt(list.size());
+            for (Object element : list) {
+                putValue(hasher, element);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            hasher.putByte((byte) 'b').putInt(array.length).putBytes(array);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            hasher.putByte((byte) 'i').putInt(array.length);
+            for (int element : array) {
+                hasher.putInt(element);
+            }
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            hasher.putByte((byte) 'j').putInt(array.length);
+            for (long element : array) {
+                hasher.putLong(element);
+            }
+        } else if (value instanceof String) {
+            hasher.putByte((byte) 's');
+            putString(hasher, (String) value);
+        } else if (value instanceof Byte) {
+            hasher.putByte((byte) 'B').putByte((Byte) value);
+        } else if (value instanceof Short) {
+            hasher.putByte((byte) 'S').putShort((Short) value);
+        } else if (value instanceof Integer) {
+            hasher.putByte((byte) 'I').putInt((Integer) value);
+        } else if (value instanceof Long) {
+            hasher.putByte((byte) 'J').putLong((Long) value);
+        } else if (value instanceof Float) {
+            hasher.putByte((byte) 'F').putFloat((Float) value);
+        } else if (value instanceof Double) {
+            hasher.putByte((byte) 'D').putDouble((Double) value);
+        } else if (value != null) {
+            hasher.putByte((byte) 'o');
+            putString(hasher, value.toString());
+        }
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
     }
 
     public BlockPaletteRewrite createRewrite(BlockPalette upstreamPalette) {
         if (BlockPalette.this == upstreamPalette) {
             return BlockPaletteRewrite.BLOCK_EQUAL;
         }
-        return new BlockPaletteRewrite(upstreamPalette, this);
+
+        synchronized (this.rewriteCache) {
+            BlockPaletteRewrite rewrite = this.rewriteCache.get(upstreamPalette);
+            if (rewrite == null) {
+                rewrite = new BlockPaletteRewrite(upstreamPalette, this);
+                if (rewrite.isIdentity()) {
+                    // Palettes differ only in metadata which is not used by rewrite
+                    rewrite = BlockPaletteRewrite.BLOCK_EQUAL;
+                }
+                this.rewriteCache.put(upstreamPalette, rewrite);
+            }
+            return rewrite;
+        }
     }
 
     private void addEntry(short id, String name, Object data) {
-        final BlockPair pair = new BlockPair(name, data);
+        final BlockPair pair = blockPairs.intern(new BlockPair(name, data));
         this.entryToId.put(pair, id);
         this.idToEntry.put(id, pair);
     }
@@ -76,6 +173,10 @@ public class BlockPalette {
         return this.idToEntry.get((short) id);
     }
 
+    public int size() {
+        return this.idToEntry.size();
+    }
+
     public static final class BlockPair extends Pair<String, Object> {
         private final String key;
         private final Object data;
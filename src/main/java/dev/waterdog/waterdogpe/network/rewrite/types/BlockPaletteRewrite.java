@@ -15,24 +15,65 @@
 
 package dev.waterdog.waterdogpe.network.rewrite.types;
 
+/**
+ * Translates block runtime ids from downstream palette to upstream palette.
+ * Translation table is computed once when rewrite is created and can be shared by all players.
+ */
 public class BlockPaletteRewrite {
 
-    public static final BlockPaletteRewrite BLOCK_EQUAL = new BlockPaletteRewrite(null, null) {
+    public static final BlockPaletteRewrite BLOCK_EQUAL = new BlockPaletteRewrite(new int[0]) {
         @Override
         public int fromDownstream(int runtimeId) {
             return runtimeId;
         }
+
+        @Override
+        public boolean isIdentity() {
+            return true;
+        }
     };
 
-    private final BlockPalette upstreamPalette;
-    private final BlockPalette downstreamPalette;
+    /**
+     * Upstream runtime id indexed by downstream runtime id.
+     */
+    private final int[] translationTable;
+    private final boolean identity;
 
     public BlockPaletteRewrite(BlockPalette upstreamPalette, BlockPalette downstreamPalette) {
-        this.upstreamPalette = upstreamPalette;
-        this.downstreamPalette = downstreamPalette;
+        this(createTable(upstreamPalette, downstreamPalette));
+    }
+
+    private BlockPaletteRewrite(int[] translationTable) {
+        this.translationTable = translationTable;
+        this.identity = isIdentity(translationTable);
+    }
+
+    private static int[] createTable(BlockPalette upstreamPalette, BlockPalette downstreamPalette) {
+        int[] table = new int[downstreamPalette.size()];
+        for (int runtimeId = 0; runtimeId < table.length; runtimeId++) {
+            table[runtimeId] = upstreamPalette.getId(downstreamPalette.getEntry(runtimeId));
+        }
+        return table;
+    }
+
+    /**
+     * @return true if every runtime id is translated to itself, so blocks do not have to be rewritten.
+     */
+    public boolean isIdentity() {
+        return this.identity;
+    }
+
+    private static boolean isIdentity(int[] table) {
+        for (int runtimeId = 0; runtimeId < table.length; runtimeId++) {
+            if (table[runtimeId] != runtimeId) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public int fromDownstream(int runtimeId) {
-        return this.upstreamPalette.getId(this.downstreamPalette.getEntry(runtimeId));
+        // Unknown blocks are translated to first palette entry
+        return runtimeId >= 0 && runtimeId < this.translationTable.length ? this.translationTable[runtimeId] : 0;
     }
 }
@@ -74,6 +74,20 @@ public class RewriteData {
         this.originalEntityId = originalEntityId;
     }
 
+    /**
+     * @return true if client-known and downstream-known entity ids are same, so no entity id has to be rewritten.
+     */
+    public boolean isEntityIdIdentity() {
+        return this.entityId == this.originalEntityId;
+    }
+
+    /**
+     * @return true if block runtime ids do not have to be rewritten.
+     */
+    public boolean isBlockRewriteIdentity() {
+        return this.blockPaletteRewrite == null || this.blockPaletteRewrite.isIdentity();
+    }
+
     public BlockPalette getBlockPalette() {
         return this.blockPalette;
     }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.session;
+
+import com.nukkitx.protocol.bedrock.BedrockServerSession;
+import dev.waterdog.waterdogpe.ProxyServer;
+import dev.waterdog.waterdogpe.player.ProxiedPlayer;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adjusts upstream compression level of each player based on proxy CPU load, player latency and traffic.
+ * Under CPU pressure levels are lowered towards configured minimum, while players on slow links or
+ * with high traffic get higher levels if CPU allows it. Level is changed only after the same decision
+ * was made in several consecutive evaluations, so levels do not oscillate.
+ */
+public class CompressionController {
+
+    private static final int EVALUATION_PERIOD = 100; // 5 seconds
+    private static final int HYSTERESIS_ROUNDS = 3;
+    private static final double HIGH_CPU_LOAD = 0.8;
+    private static final double LOW_CPU_LOAD = 0.5;
+    private static final long SLOW_LINK_LATENCY = 150;
+    private static final long HIGH_TRAFFIC_RATE = 64 * 1024;
+
+    private final ProxyServer proxy;
+    private final int minLevel;
+    private final int maxLevel;
+    private final int defaultLevel;
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+
+    private final Map<UUID, State> states = new Object2ObjectOpenHashMap<>();
+    private final LongAdder adjustments = new LongAdder();
+    private volatile int[] levelCounts = new int[10];
+    private volatile double lastCpuLoad = -1;
+
+    public CompressionController(ProxyServer proxy, int minLevel, int maxLevel) {
+        this.proxy = proxy;
+        this.minLevel = Math.max(0, Math.min(minLevel, 9));
+        this.maxLevel = Math.max(this.minLevel, Math.min(maxLevel, 9));
+        this.defaultLevel = this.clamp(proxy.getConfiguration().getUpstreamCompression());
+    }
+
+    public void start() {
+        this.proxy.getScheduler().scheduleRepeating(this::evaluate, EVALUATION_PERIOD);
+    }
+
+    private void evaluate() {
+        double cpuLoad = this.getCpuLoad();
+        this.lastCpuLoad = cpuLoad;
+
+        int[] levelCounts = new int[10];
+        int adjusted = 0;
+        Map<UUID, State> states = new Object2ObjectOpenHashMap<>();
+        for (ProxiedPlayer player : this.proxy.getPlayerManager().getPlayers().values()) {
+            State state = this.states.get(player.getUniqueId());
+            if (state == null) {
+                state = new State(this.defaultLevel, player.getUpstreamSequencer().getSentBytes());
+            }
+            states.put(player.getUniqueId(), state);
+
+            if (this.evaluatePlayer(player, state, cpuLoad)) {
+                adjusted++;
+            }
+            levelCounts[state.level]++;
+        }
+
+        // Players which left are not kept
+        this.states.clear();
+        this.states.putAll(states);
+        this.levelCounts = levelCounts;
+
+        if (adjusted > 0) {
+            this.proxy.getLogger().info("Adjusted compression level of " + adjusted + " players (cpu=" + String.format("%.2f", cpuLoad) + ", levels=" + this.formatLevelCounts(levelCounts) + ")");
+        }
+    }
+
+    private String formatLevelCounts(int[] levelCounts) {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (int level = this.minLevel; level <= this.maxLevel; level++) {
+            joiner.add(level + ": " + levelCounts[level]);
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * @return true if compression level of the player was changed.
+     */
+    private boolean evaluatePlayer(ProxiedPlayer player, State state, double cpuLoad) {
+        long sentBytes = player.getUpstreamSequencer().getSentBytes();
+        long trafficRate = (sentBytes - state.lastSentBytes) * 20 / EVALUATION_PERIOD;
+        state.lastSentBytes = sentBytes;
+
+        int direction = 0;
+        if (cpuLoad >= HIGH_CPU_LOAD) {
+            direction = -1;
+        } else if (cpuLoad >= 0 && cpuLoad <= LOW_CPU_LOAD && (player.getPing() >= SLOW_LINK_LATENCY || trafficRate >= HIGH_TRAFFIC_RATE)) {
+            direction = 1;
+        }
+
+        if (direction != state.direction) {
+            state.direction = direction;
+            state.rounds = 0;
+        }
+
+        if (direction == 0 || ++state.rounds < HYSTERESIS_ROUNDS) {
+            return false;
+        }
+        state.rounds = 0;
+
+        int level = this.clamp(state.level + direction);
+        BedrockServerSession session = player.getUpstream();
+        if (level == state.level || session == null) {
+            return false;
+        }
+
+        state.level = level;
+        // Session is not thread safe, level is changed by its own event loop between batches
+        session.getEventLoop().execute(() -> session.setCompressionLevel(level));
+        this.adjustments.increment();
+        return true;
+    }
+
+    private double getCpuLoad() {
+        if (this.osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) this.osBean).getProcessCpuLoad();
+        }
+
+        double loadAverage = this.osBean.getSystemLoadAverage();
+        return loadAverage < 0 ? -1 : loadAverage / this.osBean.getAvailableProcessors();
+    }
+
+    private int clamp(int level) {
+        return Math.max(this.minLevel, Math.min(level, this.maxLevel));
+    }
+
+    /**
+     * @return count of players using each compression level, indexed by level.
+     */
+    public int[] getLevelCounts() {
+        return this.levelCounts.clone();
+    }
+
+    public long getAdjustments() {
+        return this.adjustments.sum();
+    }
+
+    /**
+     * @return CPU load measured during last evaluation or negative value if not available.
+     */
+    public double getLastCpuLoad() {
+        return this.lastCpuLoad;
+    }
+
+    public int getMinLevel() {
+        return this.minLevel;
+    }
+
+    public int getMaxLevel() {
+        return this.maxLevel;
+    }
+
+    private static class State {
+        private int level;
+        private long lastSentBytes;
+        private int direction = 0;
+        private int rounds = 0;
+
+        private State(int level, long lastSentBytes) {
+            this.level = level;
+            this.lastSentBytes = lastSentBytes;
+        }
+    }
+}
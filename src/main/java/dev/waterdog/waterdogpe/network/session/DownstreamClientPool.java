@@ -0,0 +1,241 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.session;
+
+import com.nukkitx.protocol.bedrock.BedrockClient;
+import com.nukkitx.protocol.bedrock.BedrockClientSession;
+import dev.waterdog.waterdogpe.ProxyServer;
+import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
+import io.netty.channel.EventLoop;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import java.net.InetSocketAddress;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares bound RakNet clients between downstream connections, so joins, transfers and pings
+ * do not have to bind new socket every time.
+ * Every RakNet version and event loop has fixed count of clients and each client can hold many sessions, but only one session
+ * per downstream address. If all pooled clients are already connected to the address, new client is bound.
+ * Pooled clients are never closed by connections. Connection closes only its own session instead.
+ */
+public class DownstreamClientPool {
+
+    private final ProxyServer proxy;
+    private final int size;
+
+    /**
+     * Clients by event loop and RakNet version. Null key holds clients using shared event loop group.
+     */
+    private final Map<EventLoop, Int2ObjectMap<PooledClient[]>> clients = new IdentityHashMap<>();
+    private final Map<BedrockClient, PooledClient> pooledClients = new ConcurrentHashMap<>();
+
+    /**
+     * @param size count of shared clients per RakNet version and event loop. Pool is disabled if value is not positive.
+     */
+    public DownstreamClientPool(ProxyServer proxy, int size) {
+        this.proxy = proxy;
+        this.size = size;
+    }
+
+    public boolean isEnabled() {
+        return this.size > 0;
+    }
+
+    public boolean isPooled(BedrockClient client) {
+        return client != null && this.pooledClients.containsKey(client);
+    }
+
+    /**
+     * Returns client which can be used to connect to given address. Slot for the address is reserved
+     * and it has to be released by {@link Reservation#release()} if the client is not connected.
+     * Once connected by {@link #connect(Reservation, BedrockClient)}, slot is released when the session is closed.
+     *
+     * @param protocol  protocol of the player which is going to connect.
+     * @param address   address of the downstream server.
+     * @param eventLoop event loop which should handle the client or null to use shared event loop group.
+     * @return reservation of shared client or newly bound client if no shared client is available.
+     */
+    public Reservation acquire(ProtocolVersion protocol, InetSocketAddress address, EventLoop eventLoop) {
+        if (!this.isEnabled()) {
+            return new Reservation(this, null, address, this.proxy.bindClient(protocol, eventLoop));
+        }
+
+        PooledClient pooledClient;
+        synchronized (this.clients) {
+            pooledClient = this.getClient(protocol, address, eventLoop);
+            if (pooledClient == null) {
+                return new Reservation(this, null, address, this.proxy.bindClient(protocol, eventLoop));
+            }
+            pooledClient.addresses.add(address);
+        }
+        return new Reservation(this, pooledClient, address, pooledClient.future);
+    }
+
+    /**
+     * Returns client which can be used for actions which do not create session, like pinging.
+     * Returned client must not be closed if it is pooled.
+     */
+    public CompletableFuture<BedrockClient> acquire(ProtocolVersion protocol) {
+        if (!this.isEnabled()) {
+            return this.proxy.bindClient(protocol);
+        }
+
+        synchronized (this.clients) {
+            return this.getClient(protocol, null, null).future;
+        }
+    }
+
+    private PooledClient getClient(ProtocolVersion protocol, InetSocketAddress address, EventLoop eventLoop) {
+        int raknetVersion = protocol.getRaknetVersion();
+        PooledClient[] clients = this.clients.computeIfAbsent(eventLoop, loop -> new Int2ObjectOpenHashMap<>())
+                .computeIfAbsent(raknetVersion, i -> new PooledClient[this.size]);
+
+        PooledClient bestClient = null;
+        for (int i = 0; i < clients.length; i++) {
+            PooledClient client = clients[i];
+            if (client == null || client.future.isCompletedExceptionally()) {
+                // Bind new clients until the pool is full, so sessions are spread between sockets
+                return clients[i] = this.bindClient(protocol, eventLoop);
+            }
+
+            if (address != null && client.addresses.contains(address)) {
+                continue;
+            }
+
+            if (bestClient == null || client.addresses.size() < bestClient.addresses.size()) {
+                bestClient = client;
+            }
+        }
+        return bestClient;
+    }
+
+    private PooledClient bindClient(ProtocolVersion protocol, EventLoop eventLoop) {
+        PooledClient pooledClient = new PooledClient();
+        pooledClient.future = this.proxy.bindClient(protocol, eventLoop).thenApply(client -> {
+            this.pooledClients.put(client, pooledClient);
+            return client;
+        });
+        return pooledClient;
+    }
+
+    /**
+     * Connects client acquired from this pool to the reserved downstream address.
+     * Reservation is released if connection fails or once the session is closed.
+     */
+    public CompletableFuture<BedrockClientSession> connect(Reservation reservation, BedrockClient client) {
+        return client.connect(reservation.address).whenComplete((session, error) -> {
+            if (session == null) {
+                reservation.release();
+            } else {
+                session.addDisconnectHandler(reason -> reservation.release());
+            }
+        });
+    }
+
+    private void release(PooledClient pooledClient, InetSocketAddress address) {
+        synchronized (this.clients) {
+            pooledClient.addresses.remove(address);
+        }
+    }
+
+    /**
+     * Closes downstream connection. Client which is not pooled is closed together with its session.
+     *
+     * @param client  client used by the connection.
+     * @param session session of the connection or null if connection was not created.
+     * @param force   if block thread till everything is closed.
+     */
+    public void close(BedrockClient client, BedrockClientSession session, boolean force) {
+        if (client == null) {
+            return;
+        }
+
+        if (!this.isPooled(client)) {
+            client.close(force);
+        } else if (session != null && !session.isClosed()) {
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Closes all shared clients. Called when proxy shuts down.
+     */
+    public void shutdown() {
+        synchronized (this.clients) {
+            for (BedrockClient client : this.pooledClients.keySet()) {
+                client.close();
+            }
+            this.pooledClients.clear();
+            this.clients.clear();
+        }
+    }
+
+    /**
+     * @return count of currently bound shared clients.
+     */
+    public int getClientCount() {
+        return this.pooledClients.size();
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Address slot reserved on a client by {@link #acquire(ProtocolVersion, InetSocketAddress, EventLoop)}.
+     * Slot is released only once, so the reservation can be released from every failure path.
+     */
+    public static class Reservation {
+        private final DownstreamClientPool pool;
+        private final PooledClient pooledClient;
+        private final InetSocketAddress address;
+        private final CompletableFuture<BedrockClient> future;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Reservation(DownstreamClientPool pool, PooledClient pooledClient, InetSocketAddress address, CompletableFuture<BedrockClient> future) {
+            this.pool = pool;
+            this.pooledClient = pooledClient;
+            this.address = address;
+            this.future = future;
+        }
+
+        /**
+         * @return future completed once the client is bound.
+         */
+        public CompletableFuture<BedrockClient> getClient() {
+            return this.future;
+        }
+
+        public void release() {
+            if (this.pooledClient != null && this.released.compareAndSet(false, true)) {
+                this.pool.release(this.pooledClient, this.address);
+            }
+        }
+    }
+
+    private static class PooledClient {
+        private final Set<InetSocketAddress> addresses = new ObjectOpenHashSet<>();
+        private CompletableFuture<BedrockClient> future;
+    }
+}
@@ -16,21 +16,22 @@
 package dev.waterdog.waterdogpe.network.session;
 
 import com.nukkitx.protocol.bedrock.BedrockClient;
+import com.nukkitx.protocol.bedrock.BedrockClientSession;
+import dev.waterdog.waterdogpe.ProxyServer;
 import dev.waterdog.waterdogpe.network.ServerInfo;
 
 public class PendingConnection {
 
     private final ServerInfo serverInfo;
     private BedrockClient client;
+    private BedrockClientSession downstream;
 
     public PendingConnection(ServerInfo serverInfo) {
         this.serverInfo = serverInfo;
     }
 
     public void close() {
-        if (this.client != null) {
-            this.client.close();
-        }
+        ProxyServer.getInstance().getDownstreamClientPool().close(this.client, this.downstream, false);
     }
 
     public ServerInfo getInfo() {
@@ -44,4 +45,12 @@ public class PendingConnection {
     public void setClient(BedrockClient client) {
         this.client = client;
     }
+
+    public BedrockClientSession getDownstream() {
+        return this.downstream;
+    }
+
+    public void setDownstream(BedrockClientSession downstream) {
+        this.downstream = downstream;
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.session;
+
+import com.nukkitx.protocol.bedrock.BedrockClient;
+import com.nukkitx.protocol.bedrock.BedrockClientSession;
+import com.nukkitx.protocol.bedrock.packet.ResourcePackClientResponsePacket;
+import dev.waterdog.waterdogpe.network.ServerInfo;
+import dev.waterdog.waterdogpe.player.ProxiedPlayer;
+import dev.waterdog.waterdogpe.scheduler.TaskHandler;
+
+/**
+ * Downstream connection opened in background before the player is transferred.
+ * Login, encryption handshake and resource pack negotiation are completed and the connection is parked
+ * before the server is asked to start the game. Once the player is transferred to the server,
+ * the connection is adopted and only the game start remains.
+ * Connection is closed if it was not adopted until it expires.
+ */
+public class PrewarmedConnection {
+
+    private final ProxiedPlayer player;
+    private final ServerInfo serverInfo;
+    private final long createTime = System.currentTimeMillis();
+
+    private BedrockClient client;
+    private BedrockClientSession downstream;
+    private PendingConnection pendingConnection;
+    private TaskHandler expireTask;
+
+    private boolean parked = false;
+    private boolean adopted = false;
+    private boolean closed = false;
+
+    public PrewarmedConnection(ProxiedPlayer player, ServerInfo serverInfo) {
+        this.player = player;
+        this.serverInfo = serverInfo;
+    }
+
+    /**
+     * Called once RakNet connection was established.
+     *
+     * @return false if connection was already closed and session should not be used.
+     */
+    public synchronized boolean onConnected(BedrockClient client, BedrockClientSession downstream) {
+        this.client = client;
+        this.downstream = downstream;
+        if (this.closed) {
+            this.player.getProxy().getDownstreamClientPool().close(client, downstream, false);
+            return false;
+        }
+
+        if (this.adopted) {
+            this.onAdopted();
+        }
+        return true;
+    }
+
+    /**
+     * Called when downstream sent resource pack stack and waits for the client to complete resource packs.
+     *
+     * @return true if connection was parked and the response should not be sent yet.
+     */
+    public synchronized boolean park() {
+        if (this.adopted) {
+            return false;
+        }
+        this.parked = true;
+        return true;
+    }
+
+    /**
+     * Takes over the connection for the transfer.
+     *
+     * @param pendingConnection pending connection of the transfer.
+     * @return false if connection was closed and can not be adopted.
+     */
+    public synchronized boolean adopt(PendingConnection pendingConnection) {
+        if (this.closed || (this.downstream != null && this.downstream.isClosed())) {
+            return false;
+        }
+
+        this.adopted = true;
+        this.pendingConnection = pendingConnection;
+        if (this.expireTask != null) {
+            this.expireTask.cancel();
+        }
+
+        if (this.downstream != null) {
+            this.onAdopted();
+        }
+        return true;
+    }
+
+    private void onAdopted() {
+        if (this.player.getPendingConnection() != this.pendingConnection) {
+            // Transfer was replaced by another one while connecting
+            this.closed = true;
+            this.player.getProxy().getDownstreamClientPool().close(this.client, this.downstream, false);
+            return;
+        }
+
+        this.pendingConnection.setClient(this.client);
+        this.pendingConnection.setDownstream(this.downstream);
+        SessionInjections.injectNewDownstream(this.downstream, this.player, this.serverInfo, this.client);
+        this.player.getLogger().info("[" + this.player.getAddress() + "|" + this.player.getName() + "] -> Downstream [" + this.serverInfo.getServerName() + "] has connected (prewarmed)");
+
+        if (this.parked) {
+            ResourcePackClientResponsePacket response = new ResourcePackClientResponsePacket();
+            response.setStatus(ResourcePackClientResponsePacket.Status.COMPLETED);
+            this.downstream.sendPacketImmediately(response);
+        }
+    }
+
+    /**
+     * Closes connection which was not adopted.
+     */
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        if (this.expireTask != null) {
+            this.expireTask.cancel();
+        }
+
+        if (!this.adopted) {
+            this.player.getProxy().getDownstreamClientPool().close(this.client, this.downstream, false);
+        }
+    }
+
+    public synchronized void setExpireTask(TaskHandler expireTask) {
+        this.expireTask = expireTask;
+    }
+
+    public synchronized boolean isAdopted() {
+        return this.adopted;
+    }
+
+    public synchronized boolean isParked() {
+        return this.parked;
+    }
+
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    public ServerInfo getInfo() {
+        return this.serverInfo;
+    }
+
+    public long getCreateTime() {
+        return this.createTime;
+    }
+}
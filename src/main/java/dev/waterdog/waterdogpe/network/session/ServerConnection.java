@@ -18,7 +18,11 @@ package dev.waterdog.waterdogpe.network.session;
 import com.nukkitx.protocol.bedrock.BedrockClient;
 import com.nukkitx.protocol.bedrock.BedrockClientSession;
 import com.nukkitx.protocol.bedrock.BedrockPacket;
+import dev.waterdog.waterdogpe.ProxyServer;
 import dev.waterdog.waterdogpe.network.ServerInfo;
+import dev.waterdog.waterdogpe.network.protocol.PacketUtils;
+import dev.waterdog.waterdogpe.network.protocol.ProtocolConstants;
+import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
 
 import java.net.InetSocketAddress;
 
@@ -40,7 +44,9 @@ public class ServerConnection {
 
     public void sendPacket(BedrockPacket packet) {
         if (!this.downstream.isClosed()) {
-            this.downstream.sendPacket(packet);
+            // Raw packets are not registered in the fast codec
+            ProtocolVersion protocol = ProtocolConstants.get(this.downstream.getPacketCodec().getProtocolVersion());
+            this.downstream.sendPacket(PacketUtils.encodeIfRaw(packet, protocol, this.downstream));
         }
     }
 
@@ -54,7 +60,7 @@ public class ServerConnection {
      * @param force if block thread till everything is closed.
      */
     public void disconnect(boolean force) {
-        this.client.close(force);
+        ProxyServer.getInstance().getDownstreamClientPool().close(this.client, this.downstream, force);
     }
 
     public ServerInfo getInfo() {
@@ -35,7 +35,9 @@ public class SessionInjections {
     public static void injectNewDownstream(BedrockSession downstream, ProxiedPlayer player, ServerInfo server, BedrockClient downstreamClient) {
         downstream.setCompressionLevel(player.getProxy().getConfiguration().getDownstreamCompression());
         downstream.addDisconnectHandler((reason) -> {
-            if (downstreamClient != null && downstreamClient.getSession().equals(downstream)) {
+            // Shared clients are not closed, they are still used by other connections
+            boolean pooled = player.getProxy().getDownstreamClientPool().isPooled(downstreamClient);
+            if (downstreamClient != null && !pooled && downstreamClient.getSession().equals(downstream)) {
                 // Make sure everything is closed as excepted.
                 downstreamClient.close();
             }
@@ -30,10 +30,12 @@ import dev.waterdog.waterdogpe.network.session.LoginData;
 import dev.waterdog.waterdogpe.player.HandshakeEntry;
 import dev.waterdog.waterdogpe.player.HandshakeUtils;
 import dev.waterdog.waterdogpe.player.ProxiedPlayer;
+import dev.waterdog.waterdogpe.utils.ProxyConfig;
 import dev.waterdog.waterdogpe.utils.types.ProxyListenerInterface;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The Pipeline Handler handling the login handshake part of the initial connect. Will be replaced after success.
@@ -42,6 +44,7 @@ public class LoginUpstreamHandler implements BedrockPacketHandler {
 
     private final ProxyServer proxy;
     private final BedrockServerSession session;
+    private boolean loginReceived = false;
 
     public LoginUpstreamHandler(ProxyServer proxy, BedrockServerSession session) {
         this.proxy = proxy;
@@ -79,21 +82,65 @@ public class LoginUpstreamHandler implements BedrockPacketHandler {
             return true;
         }
 
-        boolean xboxAuth = false;
+        if (this.loginReceived) {
+            return true;
+        }
+        this.loginReceived = true;
         this.session.setLogging(WaterdogPE.version().debug());
 
-        try {
-            JsonObject certJson = (JsonObject) JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(packet.getChainData().toByteArray())));
-            if (!certJson.has("chain") || !certJson.getAsJsonObject().get("chain").isJsonArray()) {
-                throw new IllegalStateException("Certificate data is not valid");
-            }
-            JsonArray certChain = certJson.getAsJsonArray("chain");
+        // Chain verification and key agreement are expensive, so they are done outside of network thread
+        boolean accepted = this.proxy.getLoginVerifier().submit(() -> this.verifyLogin(packet, protocol), this.session.getEventLoop(),
+                (handshakeEntry, throwable) -> this.onLoginVerified(handshakeEntry, throwable, protocolVersion));
+        if (!accepted) {
+            this.proxy.getLogger().warning("[" + this.session.getAddress() + "] <-> Login rejected because verification queue is full");
+            this.onLoginFailed(false, null, "Server is busy, please try again later");
+        }
+        return true;
+    }
+
+    private HandshakeEntry verifyLogin(LoginPacket packet, ProtocolVersion protocol) throws Exception {
+        if (this.session.isClosed()) {
+            // Client has already disconnected while waiting in the queue
+            return null;
+        }
+
+        JsonObject certJson = (JsonObject) JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(packet.getChainData().toByteArray())));
+        if (!certJson.has("chain") || !certJson.getAsJsonObject().get("chain").isJsonArray()) {
+            throw new IllegalStateException("Certificate data is not valid");
+        }
+        JsonArray certChain = certJson.getAsJsonArray("chain");
 
-            HandshakeEntry handshakeEntry = HandshakeUtils.processHandshake(this.session, packet, certChain, protocol);
-            if (!(xboxAuth = handshakeEntry.isXboxAuthed()) && this.proxy.getConfiguration().isOnlineMode()) {
+        HandshakeEntry handshakeEntry = HandshakeUtils.processHandshake(this.session, packet, certChain, protocol);
+        ProxyConfig config = this.proxy.getConfiguration();
+        if (config.isUpstreamEncryption() && (handshakeEntry.isXboxAuthed() || !config.isOnlineMode())) {
+            handshakeEntry.setEncryption(HandshakeUtils.prepareEncryption(handshakeEntry.getIdentityPublicKey()));
+        }
+        return handshakeEntry;
+    }
+
+    private void onLoginVerified(HandshakeEntry handshakeEntry, Throwable throwable, int protocolVersion) {
+        if (this.session.isClosed() || (handshakeEntry == null && throwable == null)) {
+            return;
+        }
+
+        if (throwable instanceof RejectedExecutionException) {
+            this.proxy.getLogger().warning("[" + this.session.getAddress() + "] <-> Login rejected: " + throwable.getMessage());
+            this.onLoginFailed(false, null, "Server is busy, please try again later");
+            return;
+        }
+
+        if (throwable != null) {
+            this.onLoginFailed(false, throwable, "Login failed: " + throwable.getMessage());
+            this.proxy.getLogger().error("[" + this.session.getAddress() + "] Unable to complete login", throwable);
+            return;
+        }
+
+        boolean xboxAuth = handshakeEntry.isXboxAuthed();
+        try {
+            if (!xboxAuth && this.proxy.getConfiguration().isOnlineMode()) {
                 this.onLoginFailed(false, null, "disconnectionScreen.notAuthenticated");
                 this.proxy.getLogger().info("[" + this.session.getAddress() + "|" + handshakeEntry.getDisplayName() + "] <-> Upstream has disconnected due to failed XBOX authentication!");
-                return true;
+                return;
             }
 
             this.proxy.getLogger().info("[" + this.session.getAddress() + "|" + handshakeEntry.getDisplayName() + "] <-> Upstream has connected (protocol=" + protocolVersion + ")");
@@ -103,12 +150,12 @@ public class LoginUpstreamHandler implements BedrockPacketHandler {
             this.proxy.getEventManager().callEvent(loginEvent);
             if (loginEvent.isCancelled()) {
                 this.session.disconnect(loginEvent.getCancelReason());
-                return true;
+                return;
             }
 
             ProxiedPlayer player = loginEvent.getBaseClass().getConstructor(ProxyServer.class, BedrockServerSession.class, LoginData.class).newInstance(this.proxy, this.session, loginData);
             if (!this.proxy.getPlayerManager().registerPlayer(player)) {
-                return true;
+                return;
             }
 
             PlayStatusPacket status = new PlayStatusPacket();
@@ -120,7 +167,6 @@ public class LoginUpstreamHandler implements BedrockPacketHandler {
             this.onLoginFailed(xboxAuth, e, "Login failed: " + e.getMessage());
             this.proxy.getLogger().error("[" + this.session.getAddress() + "] Unable to complete login", e);
         }
-        return true;
     }
 
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.upstream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.channel.EventLoop;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded pool of threads which verify login chains and prepare encryption handshakes,
+ * so signature verification and key agreement do not block network threads during login storms.
+ * Logins are rejected once the queue is full. Queue is allocated lazily, so it can be large enough to absorb login storms.
+ * Logins which waited in the queue longer than the timeout are rejected before verification,
+ * because the client has likely given up already and verifying them would only delay other logins.
+ */
+public class LoginVerifier {
+
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeoutNanos;
+
+    private final LongAdder verifiedLogins = new LongAdder();
+    private final LongAdder rejectedLogins = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder verificationNanos = new LongAdder();
+    private final LongAccumulator maxVerificationNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param threads   count of worker threads. Logins are verified on network threads if value is not positive.
+     * @param queueSize maximum count of logins waiting for verification.
+     * @param queueTimeoutMillis maximum time in milliseconds login can wait for verification. Not positive value disables the timeout.
+     */
+    public LoginVerifier(int threads, int queueSize, long queueTimeoutMillis) {
+        this.queueTimeoutNanos = queueTimeoutMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis) : Long.MAX_VALUE;
+        if (threads > 0) {
+            ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
+            builder.setNameFormat("WaterdogLogin Executor #%d");
+            builder.setDaemon(true);
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(Math.max(1, queueSize)), builder.build(), new ThreadPoolExecutor.AbortPolicy());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.executor != null;
+    }
+
+    /**
+     * Runs verification task on worker thread and passes its result to the callback on given event loop.
+     * If the pool is disabled, task and callback are executed on the caller thread.
+     *
+     * @param task      verification task.
+     * @param eventLoop event loop of the session which is being verified.
+     * @param callback  consumer of task result or exception thrown by the task.
+     *                  RejectedExecutionException is passed if the login waited in the queue longer than the timeout.
+     * @return false if the queue is full and login should be rejected.
+     */
+    public <T> boolean submit(Callable<T> task, EventLoop eventLoop, BiConsumer<T, Throwable> callback) {
+        long queuedTime = System.nanoTime();
+        if (this.executor == null) {
+            this.verify(task, queuedTime, callback);
+            return true;
+        }
+
+        try {
+            this.executor.execute(() -> this.verifyQueued(task, queuedTime, (result, error) -> eventLoop.execute(() -> callback.accept(result, error))));
+        } catch (RejectedExecutionException e) {
+            this.rejectedLogins.increment();
+            return false;
+        }
+        this.maxQueueDepth.accumulate(this.executor.getQueue().size());
+        return true;
+    }
+
+    private <T> void verifyQueued(Callable<T> task, long queuedTime, BiConsumer<T, Throwable> callback) {
+        long waitTime = System.nanoTime() - queuedTime;
+        if (waitTime > this.queueTimeoutNanos) {
+            this.rejectedLogins.increment();
+            callback.accept(null, new RejectedExecutionException("Login waited " + TimeUnit.NANOSECONDS.toMillis(waitTime) + "ms for verification"));
+            return;
+        }
+        this.verify(task, queuedTime, callback);
+    }
+
+    private <T> void verify(Callable<T> task, long queuedTime, BiConsumer<T, Throwable> callback) {
+        long startTime = System.nanoTime();
+        T result = null;
+        Throwable error = null;
+        try {
+            result = task.call();
+        } catch (Throwable throwable) {
+            error = throwable;
+        }
+
+        long verificationTime = System.nanoTime() - startTime;
+        this.verifiedLogins.increment();
+        this.waitNanos.add(startTime - queuedTime);
+        this.verificationNanos.add(verificationTime);
+        this.maxVerificationNanos.accumulate(verificationTime);
+        callback.accept(result, error);
+    }
+
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return count of logins currently waiting for verification.
+     */
+    public int getQueueDepth() {
+        return this.executor == null ? 0 : this.executor.getQueue().size();
+    }
+
+    public long getMaxQueueDepth() {
+        return this.maxQueueDepth.get();
+    }
+
+    public long getVerifiedLogins() {
+        return this.verifiedLogins.sum();
+    }
+
+    /**
+     * @return count of logins which were rejected because the queue was full or they waited longer than the timeout.
+     */
+    public long getRejectedLogins() {
+        return this.rejectedLogins.sum();
+    }
+
+    /**
+     * @return average time in milliseconds logins waited in the queue.
+     */
+    public double getAverageWaitMillis() {
+        long verified = this.verifiedLogins.sum();
+        return verified == 0 ? 0 : this.waitNanos.sum() / 1e6 / verified;
+    }
+
+    /**
+     * @return average time in milliseconds spent verifying single login.
+     */
+    public double getAverageVerificationMillis() {
+        long verified = this.verifiedLogins.sum();
+        return verified == 0 ? 0 : this.verificationNanos.sum() / 1e6 / verified;
+    }
+
+    public double getMaxVerificationMillis() {
+        return this.maxVerificationNanos.get() / 1e6;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.player;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import dev.waterdog.waterdogpe.utils.types.LRUCache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of verified login chains.
+ * Reconnecting players present identical chain, so signatures of the chain do not have to be verified again.
+ * Entries are keyed by digest of all chain tokens and are used only within validity period of all tokens,
+ * but not longer than configured time. Client data token is not cached and is always verified against cached identity key.
+ */
+public class ChainVerificationCache {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+    private final int maxEntries;
+    private final long ttlSeconds;
+    private final LRUCache<HashCode, HandshakeUtils.VerifiedChain> entries;
+
+    /**
+     * @param maxEntries maximum count of cached chains. Cache is disabled if value is not positive.
+     * @param ttlSeconds maximum time in seconds for which verified chain is cached.
+     */
+    public ChainVerificationCache(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlSeconds = ttlSeconds;
+        this.entries = new LRUCache<>(maxEntries);
+    }
+
+    public boolean isEnabled() {
+        return this.maxEntries > 0 && this.ttlSeconds > 0;
+    }
+
+    /**
+     * Returns cached verification result of the chain, or verifies the chain and caches the result.
+     */
+    public HandshakeUtils.VerifiedChain verify(JsonArray chainArray) throws Exception {
+        if (!this.isEnabled()) {
+            return HandshakeUtils.verifyChain(chainArray);
+        }
+
+        HashCode key = this.createKey(chainArray);
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        HandshakeUtils.VerifiedChain chain = this.entries.get(key, cached -> this.isValid(cached, now));
+        if (chain != null) {
+            return chain;
+        }
+
+        chain = HandshakeUtils.verifyChain(chainArray);
+        if (this.isValid(chain, now)) {
+            this.entries.put(key, chain);
+        }
+        return chain;
+    }
+
+    private HashCode createKey(JsonArray chainArray) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        for (JsonElement element : chainArray) {
+            String token = element.getAsString();
+            hasher.putInt(token.length());
+            hasher.putString(token, StandardCharsets.UTF_8);
+        }
+        return hasher.hash();
+    }
+
+    private boolean isValid(HandshakeUtils.VerifiedChain chain, long now) {
+        return now >= chain.getNotBefore() && now < chain.getExpiration() && now < chain.getVerifiedAt() + this.ttlSeconds;
+    }
+
+    public void clear() {
+        this.entries.clear();
+    }
+
+    public int getEntryCount() {
+        return this.entries.getEntryCount();
+    }
+
+    public long getHits() {
+        return this.entries.getHits();
+    }
+
+    public long getMisses() {
+        return this.entries.getMisses();
+    }
+
+    public long getEvictions() {
+        return this.entries.getEvictions();
+    }
+
+    public double getHitRate() {
+        return this.entries.getHitRate();
+    }
+}
@@ -33,6 +33,7 @@ public class HandshakeEntry {
     private final JsonObject extraData;
     private final boolean xboxAuthed;
     private final ProtocolVersion protocol;
+    private HandshakeUtils.PreparedEncryption encryption;
 
     public HandshakeEntry(ECPublicKey identityPublicKey, JsonObject clientData, JsonObject extraData, boolean xboxAuthed, ProtocolVersion protocol) {
         this.identityPublicKey = identityPublicKey;
@@ -61,7 +62,11 @@ public class HandshakeEntry {
         builder.extraData(this.extraData);
 
         if (proxy.getConfiguration().isUpstreamEncryption()) {
-            HandshakeUtils.processEncryption(session, this.identityPublicKey);
+            if (this.encryption == null) {
+                HandshakeUtils.processEncryption(session, this.identityPublicKey);
+            } else {
+                HandshakeUtils.processEncryption(session, this.encryption);
+            }
         }
         return builder.build();
     }
@@ -70,6 +75,17 @@ public class HandshakeEntry {
         return this.identityPublicKey;
     }
 
+    /**
+     * Sets encryption handshake prepared outside of network thread, which will be used instead of computing new one.
+     */
+    public void setEncryption(HandshakeUtils.PreparedEncryption encryption) {
+        this.encryption = encryption;
+    }
+
+    public HandshakeUtils.PreparedEncryption getEncryption() {
+        return this.encryption;
+    }
+
     public boolean isXboxAuthed() {
         return this.xboxAuthed;
     }
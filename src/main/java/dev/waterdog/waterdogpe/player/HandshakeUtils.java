@@ -61,28 +61,48 @@ public class HandshakeUtils {
         return privateKeyPair;
     }
 
+    /**
+     * @return true if the chain is signed by Mojang and all signatures of the chain are valid.
+     */
     public static boolean validateChain(JsonArray chainArray) throws Exception {
+        return chainArray.size() > 0 && verifyChain(chainArray).isXboxAuthed();
+    }
+
+    /**
+     * Verifies signatures of the chain and collects identity of the player together with validity period of the chain.
+     * Chain which is not signed by Mojang or has broken signature is returned as not xbox authenticated.
+     */
+    public static VerifiedChain verifyChain(JsonArray chainArray) throws Exception {
+        Preconditions.checkArgument(chainArray.size() > 0, "Chain is empty!");
         ECPublicKey lastKey = null;
         boolean validChain = false;
+        boolean brokenChain = false;
+        long notBefore = 0;
+        long expiration = Long.MAX_VALUE;
+        String payloadString = null;
 
         for (JsonElement element : chainArray) {
             JWSObject jwt = JWSObject.parse(element.getAsString());
-            if (!validChain) {
+            if (!validChain && !brokenChain) {
                 validChain = EncryptionUtils.verifyJwt(jwt, EncryptionUtils.getMojangPublicKey());
             }
 
-            if (lastKey != null) {
-                if (!EncryptionUtils.verifyJwt(jwt, lastKey)) {
-                    return false;
-                }
+            if (lastKey != null && !brokenChain && !EncryptionUtils.verifyJwt(jwt, lastKey)) {
+                brokenChain = true;
             }
 
-            JsonObject payload = (JsonObject) JsonParser.parseString(jwt.getPayload().toString());
+            payloadString = jwt.getPayload().toString();
+            JsonObject payload = (JsonObject) JsonParser.parseString(payloadString);
             Preconditions.checkArgument(payload.has("identityPublicKey"), "IdentityPublicKey node is missing in chain!");
-            JsonElement ipkNode = payload.get("identityPublicKey");
-            lastKey = EncryptionUtils.generateKey(ipkNode.getAsString());
+            if (payload.has("nbf")) {
+                notBefore = Math.max(notBefore, payload.get("nbf").getAsLong());
+            }
+            if (payload.has("exp")) {
+                expiration = Math.min(expiration, payload.get("exp").getAsLong());
+            }
+            lastKey = EncryptionUtils.generateKey(payload.get("identityPublicKey").getAsString());
         }
-        return validChain;
+        return new VerifiedChain(validChain && !brokenChain, lastKey, payloadString, notBefore, expiration);
     }
 
     public static JWSObject createExtraData(KeyPair pair, JsonObject extraData) {
@@ -117,19 +137,18 @@ public class HandshakeUtils {
 
     public static HandshakeEntry processHandshake(BedrockSession session, LoginPacket packet, JsonArray certChain, ProtocolVersion protocol) throws Exception {
         // Cert chain should be signed by Mojang is is client xbox authenticated
-        boolean xboxAuth = HandshakeUtils.validateChain(certChain);
-        JWSObject jwt = JWSObject.parse(certChain.get(certChain.size() - 1).getAsString());
-        JsonObject payload = (JsonObject) JsonParser.parseString(jwt.getPayload().toString());
+        // Reconnecting players send the same chain, so verified chains are cached
+        VerifiedChain chain = ProxyServer.getInstance().getChainVerificationCache().verify(certChain);
+        boolean xboxAuth = chain.isXboxAuthed();
+        JsonObject payload = (JsonObject) JsonParser.parseString(chain.getIdentityPayload());
         JsonObject extraData = HandshakeUtils.parseExtraData(packet, payload);
 
-        if (!payload.has("identityPublicKey")) {
-            throw new RuntimeException("Identity Public Key was not found!");
-        }
-        String identityPublicKeyString = payload.get("identityPublicKey").getAsString();
-
-        ECPublicKey identityPublicKey = EncryptionUtils.generateKey(identityPublicKeyString);
+        ECPublicKey identityPublicKey = chain.getIdentityPublicKey();
         JWSObject clientJwt = JWSObject.parse(packet.getSkinData().toString());
-        EncryptionUtils.verifyJwt(clientJwt, identityPublicKey);
+        if (!EncryptionUtils.verifyJwt(clientJwt, identityPublicKey)) {
+            // Client data is not part of the cached chain, so it must be always signed by identity key of the chain
+            throw new IllegalStateException("Client data is not signed by identity key");
+        }
         JsonObject clientData = HandshakeUtils.parseClientData(clientJwt, extraData, session);
         return new HandshakeEntry(identityPublicKey, clientData, extraData, xboxAuth, protocol);
     }
@@ -160,12 +179,92 @@ public class HandshakeUtils {
     }
 
     public static void processEncryption(BedrockSession session, PublicKey key) throws Exception {
+        processEncryption(session, prepareEncryption(key));
+    }
+
+    /**
+     * Derives encryption key and signs handshake JWT. This does not touch the session and can be called from any thread.
+     */
+    public static PreparedEncryption prepareEncryption(PublicKey key) throws Exception {
         byte[] token = EncryptionUtils.generateRandomToken();
         SecretKey encryptionKey = EncryptionUtils.getSecretKey(privateKeyPair.getPrivate(), key, token);
-        session.enableEncryption(encryptionKey);
+        String jwt = EncryptionUtils.createHandshakeJwt(privateKeyPair, token).serialize();
+        return new PreparedEncryption(encryptionKey, jwt);
+    }
+
+    public static void processEncryption(BedrockSession session, PreparedEncryption encryption) {
+        session.enableEncryption(encryption.getEncryptionKey());
 
         ServerToClientHandshakePacket packet = new ServerToClientHandshakePacket();
-        packet.setJwt(EncryptionUtils.createHandshakeJwt(privateKeyPair, token).serialize());
+        packet.setJwt(encryption.getJwt());
         session.sendPacketImmediately(packet);
     }
+
+    /**
+     * Result of chain verification. Identity payload is kept as string, because parsed payload is modified during login.
+     */
+    public static class VerifiedChain {
+        private final boolean xboxAuthed;
+        private final ECPublicKey identityPublicKey;
+        private final String identityPayload;
+        private final long notBefore;
+        private final long expiration;
+        private final long verifiedAt = System.currentTimeMillis() / 1000;
+
+        private VerifiedChain(boolean xboxAuthed, ECPublicKey identityPublicKey, String identityPayload, long notBefore, long expiration) {
+            this.xboxAuthed = xboxAuthed;
+            this.identityPublicKey = identityPublicKey;
+            this.identityPayload = identityPayload;
+            this.notBefore = notBefore;
+            this.expiration = expiration;
+        }
+
+        public boolean isXboxAuthed() {
+            return this.xboxAuthed;
+        }
+
+        public ECPublicKey getIdentityPublicKey() {
+            return this.identityPublicKey;
+        }
+
+        public String getIdentityPayload() {
+            return this.identityPayload;
+        }
+
+        /**
+         * @return unix time in seconds since which all tokens of the chain are valid.
+         */
+        public long getNotBefore() {
+            return this.notBefore;
+        }
+
+        /**
+         * @return unix time in seconds at which first token of the chain expires.
+         */
+        public long getExpiration() {
+            return this.expiration;
+        }
+
+        public long getVerifiedAt() {
+            return this.verifiedAt;
+        }
+    }
+
+    public static class PreparedEncryption {
+        private final SecretKey encryptionKey;
+        private final String jwt;
+
+        private PreparedEncryption(SecretKey encryptionKey, String jwt) {
+            this.encryptionKey = encryptionKey;
+            this.jwt = jwt;
+        }
+
+        public SecretKey getEncryptionKey() {
+            return this.encryptionKey;
+        }
+
+        public String getJwt() {
+            return this.jwt;
+        }
+    }
 }
@@ -15,8 +15,12 @@
 
 package dev.waterdog.waterdogpe.player;
 
+import com.google.common.base.Preconditions;
 import com.nukkitx.math.vector.Vector3f;
 import com.nukkitx.math.vector.Vector3i;
+import com.nukkitx.network.VarInts;
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockServerSession;
 import com.nukkitx.protocol.bedrock.BedrockSession;
 import com.nukkitx.protocol.bedrock.data.GameRuleData;
 import com.nukkitx.protocol.bedrock.data.GameType;
@@ -24,11 +28,18 @@ import com.nukkitx.protocol.bedrock.data.LevelEventType;
 import com.nukkitx.protocol.bedrock.data.entity.EntityData;
 import com.nukkitx.protocol.bedrock.data.entity.EntityLinkData;
 import com.nukkitx.protocol.bedrock.packet.*;
+import dev.waterdog.waterdogpe.network.bridge.BatchCoalescer;
+import dev.waterdog.waterdogpe.network.bridge.BatchSequencer;
+import dev.waterdog.waterdogpe.network.protocol.BatchWriter;
+import dev.waterdog.waterdogpe.network.protocol.PacketUtils;
+import dev.waterdog.waterdogpe.network.protocol.ProtocolConstants;
+import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 /**
  * Collection of functions to remove various client-sided data sets when switching servers.
@@ -39,6 +50,12 @@ public class PlayerRewriteUtils {
     public static final RequestChunkRadiusPacket defaultChunkRadius = new RequestChunkRadiusPacket();
     public static final ClientCacheStatusPacket defaultCachePacket = new ClientCacheStatusPacket();
 
+    private static final int EFFECT_COUNT = 28;
+    /**
+     * Packets removing all effects encoded for each protocol version without leading runtime entity id.
+     */
+    private static final Map<ProtocolVersion, RawTemplate[]> REMOVE_EFFECTS_TEMPLATES = Collections.synchronizedMap(new EnumMap<>(ProtocolVersion.class));
+
     static {
         defaultChunkRadius.setRadius(8);
     }
@@ -51,54 +68,78 @@ public class PlayerRewriteUtils {
         if (session == null || session.isClosed()) {
             return;
         }
+        session.sendPacket(createChunkPublisherUpdate(defaultSpawn, radius));
+    }
+
+    public static NetworkChunkPublisherUpdatePacket createChunkPublisherUpdate(Vector3i defaultSpawn, int radius) {
         NetworkChunkPublisherUpdatePacket packet = new NetworkChunkPublisherUpdatePacket();
         packet.setPosition(defaultSpawn);
         packet.setRadius(radius);
-        session.sendPacket(packet);
+        return packet;
     }
 
     public static void injectGameMode(BedrockSession session, GameType gameMode) {
         if (session == null || session.isClosed()) {
             return;
         }
+        session.sendPacket(createGameMode(gameMode));
+    }
+
+    public static SetPlayerGameTypePacket createGameMode(GameType gameMode) {
         SetPlayerGameTypePacket packet = new SetPlayerGameTypePacket();
         packet.setGamemode(gameMode.ordinal());
-        session.sendPacket(packet);
+        return packet;
     }
 
     public static void injectGameRules(BedrockSession session, List<GameRuleData<?>> gameRules) {
         if (session == null || session.isClosed()) {
             return;
         }
+        session.sendPacket(createGameRules(gameRules));
+    }
+
+    public static GameRulesChangedPacket createGameRules(List<GameRuleData<?>> gameRules) {
         GameRulesChangedPacket packet = new GameRulesChangedPacket();
         packet.getGameRules().addAll(gameRules);
-        session.sendPacket(packet);
+        return packet;
     }
 
     public static void injectClearWeather(BedrockSession session) {
         if (session == null || session.isClosed()) {
             return;
         }
+        List<LevelEventPacket> packets = createClearWeather();
+        session.sendPacketImmediately(packets.get(0));
+        session.sendPacket(packets.get(1));
+    }
+
+    /**
+     * @return packets stopping rain and thunderstorm.
+     */
+    public static List<LevelEventPacket> createClearWeather() {
         LevelEventPacket stopRain = new LevelEventPacket();
         stopRain.setType(LevelEventType.STOP_RAINING);
         stopRain.setData(10000);
         stopRain.setPosition(Vector3f.ZERO);
-        session.sendPacketImmediately(stopRain);
 
         LevelEventPacket stopThunder = new LevelEventPacket();
         stopThunder.setData(0);
         stopThunder.setPosition(Vector3f.ZERO);
         stopThunder.setType(LevelEventType.STOP_THUNDERSTORM);
-        session.sendPacket(stopThunder);
+        return Arrays.asList(stopRain, stopThunder);
     }
 
     public static void injectSetDifficulty(BedrockSession session, int difficulty) {
         if (session == null || session.isClosed()) {
             return;
         }
+        session.sendPacket(createSetDifficulty(difficulty));
+    }
+
+    public static SetDifficultyPacket createSetDifficulty(int difficulty) {
         SetDifficultyPacket packet = new SetDifficultyPacket();
         packet.setDifficulty(difficulty);
-        session.sendPacket(packet);
+        return packet;
     }
 
     public static void injectRemoveEntityLink(BedrockSession session, long vehicleId, long riderId) {
@@ -133,11 +174,24 @@ public class PlayerRewriteUtils {
         session.sendPacket(packet);
     }
 
+    /**
+     * @deprecated protocol is resolved from codec of the session, use {@link #injectRemoveAllEffects(BedrockSession, long, ProtocolVersion)}.
+     */
+    @Deprecated
     public static void injectRemoveAllEffects(BedrockSession session, long runtimeId) {
         if (session == null || session.isClosed()) {
             return;
         }
-        for (int i = 0; i < 28; i++) {
+        ProtocolVersion protocol = ProtocolConstants.get(session.getPacketCodec().getProtocolVersion());
+        Preconditions.checkArgument(protocol != null, "Unsupported protocol of the session");
+        injectRemoveAllEffects(session, runtimeId, protocol);
+    }
+
+    public static void injectRemoveAllEffects(BedrockSession session, long runtimeId, ProtocolVersion protocol) {
+        if (session == null || session.isClosed()) {
+            return;
+        }
+        for (int i = 0; i < EFFECT_COUNT; i++) {
             injectRemoveEntityEffect(session, runtimeId, i);
         }
         SetEntityDataPacket packet = new SetEntityDataPacket();
@@ -145,7 +199,122 @@ public class PlayerRewriteUtils {
         packet.getMetadata().putInt(EntityData.EFFECT_COLOR, 0);
         packet.getMetadata().putByte(EntityData.EFFECT_AMBIENT, (byte) 0);
         packet.setRuntimeEntityId(runtimeId);
-        session.sendPacket(packet);
+        // SetEntityDataPacket is not registered in fast codec
+        session.sendPacket(PacketUtils.encodeRaw(packet, protocol, session));
+    }
+
+    /**
+     * Removes all entities, entity links, player list entries, scoreboards, boss bars and effects sent by previous server.
+     * Packets are written to single batch which is compressed once and sent in order with other upstream batches.
+     * Packets removing effects are same for every player, so they are encoded only once per protocol version.
+     * Slot for the batch is reserved immediately, while the batch itself is written once the tracking state
+     * is reset, see {@link PlayerTrackingState#reset(java.util.function.Consumer)}. Calling thread does not wait for the event loop.
+     * Packets describing the new server are written after the cleanup into the same batch,
+     * so they can not overtake the cleanup or batches of the previous server.
+     *
+     * @param player    player who is being transferred.
+     * @param runtimeId runtime entity id of the player seen by the client.
+     * @param packets   packets which are sent after the cleanup.
+     */
+    public static void injectTransferCleanup(ProxiedPlayer player, long runtimeId, List<BedrockPacket> packets) {
+        // Batches merged before the transfer must be sent first
+        BatchCoalescer coalescer = player.getUpstreamCoalescer();
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+
+        BatchSequencer.Slot slot = player.getUpstreamSequencer().reserve();
+        player.getTrackingState().reset(state -> {
+            ByteBuf compressed = null;
+            try {
+                compressed = createTransferCleanup(player, state, runtimeId, packets);
+            } finally {
+                player.getUpstreamSequencer().complete(slot, compressed);
+            }
+        });
+    }
+
+    private static ByteBuf createTransferCleanup(ProxiedPlayer player, PlayerTrackingState.Snapshot state, long runtimeId, List<BedrockPacket> packets) {
+        BedrockServerSession session = player.getUpstream();
+        if (session == null || session.isClosed()) {
+            return null;
+        }
+
+        ProtocolVersion protocol = player.getProtocol();
+        RawTemplate[] effectTemplates = REMOVE_EFFECTS_TEMPLATES.computeIfAbsent(protocol, version -> createRemoveEffectsTemplates(version, session));
+        int packetCount = 1 + state.getEntityLinks().size() + state.getEntities().size() + state.getScoreboards().size() +
+                state.getBossbars().size() + effectTemplates.length + packets.size();
+
+        // Default codec is used because some of the packets are not registered in the fast codec
+        BatchWriter writer = new BatchWriter(protocol.getDefaultCodec(), session, packetCount);
+        ByteBuf compressed;
+        try {
+            if (!state.getPlayers().isEmpty()) {
+                PlayerListPacket packet = new PlayerListPacket();
+                packet.setAction(PlayerListPacket.Action.REMOVE);
+                for (UUID uuid : state.getPlayers()) {
+                    packet.getEntries().add(new PlayerListPacket.Entry(uuid));
+                }
+                writer.write(packet);
+            }
+
+            for (Long2LongMap.Entry entry : state.getEntityLinks().long2LongEntrySet()) {
+                SetEntityLinkPacket packet = new SetEntityLinkPacket();
+                packet.setEntityLink(new EntityLinkData(entry.getLongKey(), entry.getLongValue(), EntityLinkData.Type.REMOVE, false, false));
+                writer.write(packet);
+            }
+
+            for (long entityId : state.getEntities()) {
+                RemoveEntityPacket packet = new RemoveEntityPacket();
+                packet.setUniqueEntityId(entityId);
+                writer.write(packet);
+            }
+
+            for (String objectiveId : state.getScoreboards()) {
+                RemoveObjectivePacket packet = new RemoveObjectivePacket();
+                packet.setObjectiveId(objectiveId);
+                writer.write(packet);
+            }
+
+            for (long bossbarId : state.getBossbars()) {
+                BossEventPacket packet = new BossEventPacket();
+                packet.setAction(BossEventPacket.Action.REMOVE);
+                packet.setBossUniqueEntityId(bossbarId);
+                writer.write(packet);
+            }
+
+            for (RawTemplate template : effectTemplates) {
+                template.write(writer, runtimeId);
+            }
+
+            for (BedrockPacket packet : packets) {
+                writer.write(packet);
+            }
+
+            int threshold = player.getProxy().getConfiguration().getCompressionThreshold();
+            compressed = writer.compress(session.getCompressionLevel(), threshold);
+            player.getProxy().getBatchStats().recordEncoded(writer.getSize(), compressed.readableBytes());
+        } finally {
+            writer.release();
+        }
+        return compressed;
+    }
+
+    private static RawTemplate[] createRemoveEffectsTemplates(ProtocolVersion protocol, BedrockSession session) {
+        RawTemplate[] templates = new RawTemplate[EFFECT_COUNT + 1];
+        for (int i = 0; i < EFFECT_COUNT; i++) {
+            MobEffectPacket packet = new MobEffectPacket();
+            packet.setEffectId(i);
+            packet.setEvent(MobEffectPacket.Event.REMOVE);
+            templates[i] = RawTemplate.create(packet, protocol, session);
+        }
+
+        SetEntityDataPacket packet = new SetEntityDataPacket();
+        packet.getMetadata().putShort(EntityData.POTION_AUX_VALUE, 0);
+        packet.getMetadata().putInt(EntityData.EFFECT_COLOR, 0);
+        packet.getMetadata().putByte(EntityData.EFFECT_AMBIENT, (byte) 0);
+        templates[EFFECT_COUNT] = RawTemplate.create(packet, protocol, session);
+        return templates;
     }
 
     public static void injectRemoveEntityEffect(BedrockSession session, long runtimeId, int effect) {
@@ -179,11 +348,52 @@ public class PlayerRewriteUtils {
         if (session == null || session.isClosed()) {
             return;
         }
+        session.sendPacket(createPosition(position, rotation, runtimeId));
+    }
+
+    public static MovePlayerPacket createPosition(Vector3f position, Vector3f rotation, long runtimeId) {
         MovePlayerPacket packet = new MovePlayerPacket();
         packet.setPosition(position);
         packet.setRuntimeEntityId(runtimeId);
         packet.setRotation(rotation);
         packet.setMode(MovePlayerPacket.Mode.RESPAWN);
-        session.sendPacket(packet);
+        return packet;
+    }
+
+    /**
+     * Encoded packet which payload starts with runtime entity id.
+     */
+    private static class RawTemplate {
+        private final int packetId;
+        private final byte[] payload;
+
+        private RawTemplate(int packetId, byte[] payload) {
+            this.packetId = packetId;
+            this.payload = payload;
+        }
+
+        private static RawTemplate create(BedrockPacket packet, ProtocolVersion protocol, BedrockSession session) {
+            UnknownPacket encoded = PacketUtils.encodeRaw(packet, protocol, session);
+            try {
+                ByteBuf payload = encoded.getPayload();
+                Preconditions.checkState(VarInts.readUnsignedLong(payload) == 0, "Packet does not start with runtime entity id");
+                byte[] data = new byte[payload.readableBytes()];
+                payload.readBytes(data);
+                return new RawTemplate(encoded.getPacketId(), data);
+            } finally {
+                ReferenceCountUtil.release(encoded);
+            }
+        }
+
+        private void write(BatchWriter writer, long runtimeId) {
+            ByteBuf payload = ByteBufAllocator.DEFAULT.ioBuffer(10 + this.payload.length);
+            try {
+                VarInts.writeUnsignedLong(payload, runtimeId);
+                payload.writeBytes(this.payload);
+                writer.writeRaw(this.packetId, 0, 0, payload);
+            } finally {
+                payload.release();
+            }
+        }
     }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.player;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import dev.waterdog.waterdogpe.utils.types.UUIDSet;
+import io.netty.channel.EventLoop;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.longs.*;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+import it.unimi.dsi.fastutil.objects.ObjectSets;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Holds entities, boss bars, player list entries, scoreboards and entity links sent to the player by downstream,
+ * which have to be removed when player is transferred to another server.
+ * With event loop affinity, downstream is handled by the event loop of the upstream session and the state is confined
+ * to that event loop. Collections are not synchronized and rare updates from other threads are passed to the event loop.
+ * Without affinity, most updates come from the downstream event loop and passing each of them to the upstream event loop
+ * would cost more than a lock, so the state is guarded by its monitor instead.
+ * Other threads can read the state only using {@link #snapshot()}.
+ * Player list entries are stored as pairs of longs and objective names are interned,
+ * because the same entries and objectives are usually tracked by many players.
+ */
+public class PlayerTrackingState {
+
+    private static final Interner<String> OBJECTIVE_INTERNER = Interners.newWeakInterner();
+
+    private final EventLoop eventLoop;
+    private final boolean confined;
+
+    private final LongSet entities = new LongOpenHashSet();
+    private final LongSet bossbars = new LongOpenHashSet();
+    private final UUIDSet players = new UUIDSet();
+    private final ObjectSet<String> scoreboards = new ObjectOpenHashSet<>();
+    private final Long2LongMap entityLinks = new Long2LongOpenHashMap();
+
+    /**
+     * @param eventLoop event loop of the upstream session.
+     * @param confined  if the state should be confined to the event loop instead of being guarded by its monitor.
+     */
+    public PlayerTrackingState(EventLoop eventLoop, boolean confined) {
+        this.eventLoop = eventLoop;
+        this.confined = confined;
+    }
+
+    private void runOnLoop(Runnable task) {
+        if (!this.confined) {
+            synchronized (this) {
+                task.run();
+            }
+        } else if (this.eventLoop.inEventLoop()) {
+            task.run();
+        } else {
+            this.eventLoop.execute(task);
+        }
+    }
+
+    public void addEntity(long entityId) {
+        this.runOnLoop(() -> this.entities.add(entityId));
+    }
+
+    public void removeEntity(long entityId) {
+        this.runOnLoop(() -> this.entities.remove(entityId));
+    }
+
+    public void addBossbar(long bossbarId) {
+        this.runOnLoop(() -> this.bossbars.add(bossbarId));
+    }
+
+    public void removeBossbar(long bossbarId) {
+        this.runOnLoop(() -> this.bossbars.remove(bossbarId));
+    }
+
+    public void addPlayer(UUID uuid) {
+        this.runOnLoop(() -> this.players.add(uuid));
+    }
+
+    public void removePlayer(UUID uuid) {
+        this.runOnLoop(() -> this.players.remove(uuid));
+    }
+
+    public void addScoreboard(String objectiveId) {
+        String internedId = OBJECTIVE_INTERNER.intern(objectiveId);
+        this.runOnLoop(() -> this.scoreboards.add(internedId));
+    }
+
+    public void removeScoreboard(String objectiveId) {
+        this.runOnLoop(() -> this.scoreboards.remove(objectiveId));
+    }
+
+    public void addEntityLink(long from, long to) {
+        this.runOnLoop(() -> this.entityLinks.put(from, to));
+    }
+
+    public void removeEntityLink(long from) {
+        this.runOnLoop(() -> this.entityLinks.remove(from));
+    }
+
+    /**
+     * Creates copy of the current state which can be read from any thread.
+     * Future is completed immediately if called from the owning event loop or if the state is not confined.
+     */
+    public CompletableFuture<Snapshot> snapshot() {
+        if (!this.confined) {
+            synchronized (this) {
+                return CompletableFuture.completedFuture(new Snapshot(this));
+            }
+        }
+        if (this.eventLoop.inEventLoop()) {
+            return CompletableFuture.completedFuture(new Snapshot(this));
+        }
+        return CompletableFuture.supplyAsync(() -> new Snapshot(this), this.eventLoop);
+    }
+
+    /**
+     * Removes everything from the state. Used when player is transferred to another server.
+     * Reset of confined state is executed on the event loop, so all updates which were passed to the event loop before
+     * are included in the snapshot. Calling thread does not wait for the event loop.
+     *
+     * @param callback consumer of the state before it was cleared, called on the event loop,
+     *                 or by the calling thread if the state is not confined.
+     */
+    public void reset(Consumer<Snapshot> callback) {
+        this.runOnLoop(() -> callback.accept(this.reset0()));
+    }
+
+    private Snapshot reset0() {
+        Snapshot snapshot = new Snapshot(this);
+        this.entities.clear();
+        this.bossbars.clear();
+        this.players.clear();
+        this.scoreboards.clear();
+        this.entityLinks.clear();
+        return snapshot;
+    }
+
+    /**
+     * Estimates memory used by tracked data. Interned objective names are not included.
+     * Value is only approximate if called from other thread than the owning event loop.
+     *
+     * @return approximate memory usage in bytes.
+     */
+    public long getMemoryUsage() {
+        long size = this.players.getMemoryUsage();
+        size += estimateHashSize(this.entities.size(), Long.BYTES);
+        size += estimateHashSize(this.bossbars.size(), Long.BYTES);
+        size += estimateHashSize(this.scoreboards.size(), 4);
+        size += estimateHashSize(this.entityLinks.size(), 2 * Long.BYTES);
+        return size;
+    }
+
+    private static long estimateHashSize(int entries, int entrySize) {
+        // Object header and fields of the collection and its table arrays
+        return 64 + (long) HashCommon.arraySize(entries, Hash.DEFAULT_LOAD_FACTOR) * entrySize;
+    }
+
+    public EventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+
+    /**
+     * Immutable copy of the tracking state.
+     */
+    public static class Snapshot {
+        private final LongSet entities;
+        private final LongSet bossbars;
+        private final Set<UUID> players;
+        private final ObjectSet<String> scoreboards;
+        private final Long2LongMap entityLinks;
+
+        private Snapshot(PlayerTrackingState state) {
+            this.entities = LongSets.unmodifiable(new LongOpenHashSet(state.entities));
+            this.bossbars = LongSets.unmodifiable(new LongOpenHashSet(state.bossbars));
+            this.players = Collections.unmodifiableSet(new UUIDSet(state.players));
+            this.scoreboards = ObjectSets.unmodifiable(new ObjectOpenHashSet<>(state.scoreboards));
+            this.entityLinks = Long2LongMaps.unmodifiable(new Long2LongOpenHashMap(state.entityLinks));
+        }
+
+        public LongSet getEntities() {
+            return this.entities;
+        }
+
+        public LongSet getBossbars() {
+            return this.bossbars;
+        }
+
+        public Set<UUID> getPlayers() {
+            return this.players;
+        }
+
+        public ObjectSet<String> getScoreboards() {
+            return this.scoreboards;
+        }
+
+        public Long2LongMap getEntityLinks() {
+            return this.entityLinks;
+        }
+    }
+}
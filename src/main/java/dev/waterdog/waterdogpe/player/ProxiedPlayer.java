@@ -30,31 +30,41 @@ import dev.waterdog.waterdogpe.command.CommandSender;
 import dev.waterdog.waterdogpe.event.defaults.*;
 import dev.waterdog.waterdogpe.logger.MainLogger;
 import dev.waterdog.waterdogpe.network.ServerInfo;
+import dev.waterdog.waterdogpe.network.bridge.BatchCoalescer;
+import dev.waterdog.waterdogpe.network.bridge.BatchSequencer;
 import dev.waterdog.waterdogpe.network.bridge.DownstreamBridge;
 import dev.waterdog.waterdogpe.network.bridge.TransferBatchBridge;
 import dev.waterdog.waterdogpe.network.bridge.UpstreamBridge;
 import dev.waterdog.waterdogpe.network.downstream.InitialHandler;
 import dev.waterdog.waterdogpe.network.downstream.SwitchDownstreamHandler;
+import dev.waterdog.waterdogpe.network.protocol.BatchWriter;
+import dev.waterdog.waterdogpe.network.protocol.PacketInterest;
+import dev.waterdog.waterdogpe.network.protocol.PacketUtils;
 import dev.waterdog.waterdogpe.network.protocol.ProtocolVersion;
 import dev.waterdog.waterdogpe.network.rewrite.RewriteMaps;
 import dev.waterdog.waterdogpe.network.rewrite.types.RewriteData;
+import dev.waterdog.waterdogpe.network.session.DownstreamClientPool;
 import dev.waterdog.waterdogpe.network.session.LoginData;
 import dev.waterdog.waterdogpe.network.session.PendingConnection;
+import dev.waterdog.waterdogpe.network.session.PrewarmedConnection;
 import dev.waterdog.waterdogpe.network.session.ServerConnection;
 import dev.waterdog.waterdogpe.network.session.SessionInjections;
 import dev.waterdog.waterdogpe.network.upstream.ResourcePacksHandler;
 import dev.waterdog.waterdogpe.network.upstream.ConnectedUpstreamHandler;
+import dev.waterdog.waterdogpe.utils.ProxyConfig;
 import dev.waterdog.waterdogpe.utils.types.PacketHandler;
+import dev.waterdog.waterdogpe.utils.types.PacketHandlerChain;
 import dev.waterdog.waterdogpe.utils.types.Permission;
 import dev.waterdog.waterdogpe.utils.types.TextContainer;
 import dev.waterdog.waterdogpe.utils.types.TranslationContainer;
 import it.unimi.dsi.fastutil.longs.*;
 import it.unimi.dsi.fastutil.objects.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoop;
 
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -66,18 +76,23 @@ public class ProxiedPlayer implements CommandSender {
     private final ProxyServer proxy;
 
     private final BedrockServerSession upstream;
+    /**
+     * Keeps order of batches sent by bridges to upstream while some of them are processed asynchronously.
+     */
+    private final BatchSequencer upstreamSequencer;
+    /**
+     * Merges batches sent to upstream if enabled in config, otherwise null.
+     */
+    private final BatchCoalescer upstreamCoalescer;
     private final AtomicBoolean disconnected = new AtomicBoolean(false);
     private final RewriteData rewriteData = new RewriteData();
     private final LoginData loginData;
     private final RewriteMaps rewriteMaps;
-    private final LongSet entities = LongSets.synchronize(new LongOpenHashSet());
-    private final LongSet bossbars = LongSets.synchronize(new LongOpenHashSet());
-    private final ObjectSet<UUID> players = ObjectSets.synchronize(new ObjectOpenHashSet<>());
-    private final ObjectSet<String> scoreboards = ObjectSets.synchronize(new ObjectOpenHashSet<>());
-    private final Long2LongMap entityLinks = Long2LongMaps.synchronize(new Long2LongOpenHashMap());
+    private final PlayerTrackingState trackingState;
     private final Object2ObjectMap<String, Permission> permissions = new Object2ObjectOpenHashMap<>();
     private ServerConnection serverConnection;
     private PendingConnection pendingConnection;
+    private final Object2ObjectMap<ServerInfo, PrewarmedConnection> prewarmedConnections = new Object2ObjectOpenHashMap<>();
     private boolean admin = false;
     /**
      * Signalizes if connection bridges can do entity and block rewrite.
@@ -98,15 +113,26 @@ public class ProxiedPlayer implements CommandSender {
      */
     private volatile boolean acceptResourcePacks = true;
     /**
-     * Additional downstream and upstream handlers can be set by plugin.
+     * Additional downstream and upstream handlers can be added by plugins.
      * Do not set directly BedrockPacketHandler to sessions!
      */
-    private PacketHandler pluginUpstreamHandler = null;
-    private PacketHandler pluginDownstreamHandler = null;
+    private final PacketHandlerChain pluginUpstreamHandlers = new PacketHandlerChain();
+    private final PacketHandlerChain pluginDownstreamHandlers = new PacketHandlerChain();
+    private volatile PacketHandler pluginUpstreamHandler = null;
+    private volatile PacketHandler pluginDownstreamHandler = null;
 
     public ProxiedPlayer(ProxyServer proxy, BedrockServerSession session, LoginData loginData) {
         this.proxy = proxy;
         this.upstream = session;
+        this.upstreamSequencer = new BatchSequencer(session);
+        ProxyConfig config = proxy.getConfiguration();
+        this.trackingState = new PlayerTrackingState(session.getEventLoop(), config.isEventLoopAffinity());
+        if (config.getUpstreamCoalesceWindow() > 0) {
+            PacketInterest immediateFlush = PacketInterest.of(config.getUpstreamCoalesceImmediate());
+            this.upstreamCoalescer = new BatchCoalescer(this, session, config.getUpstreamCoalesceWindow(), config.getUpstreamCoalesceThreshold(), immediateFlush);
+        } else {
+            this.upstreamCoalescer = null;
+        }
         this.loginData = loginData;
         this.rewriteMaps = new RewriteMaps(this);
         this.proxy.getPlayerManager().subscribePermissions(this);
@@ -209,14 +235,41 @@ public class ProxiedPlayer implements CommandSender {
         PendingConnection pendingConnection = new PendingConnection(targetServer);
         this.setPendingConnection(pendingConnection);
 
-        CompletableFuture<BedrockClient> future = this.proxy.bindClient(this.getProtocol());
-        future.thenApply(client -> {
+        PrewarmedConnection prewarmedConnection = this.takePrewarmedConnection(targetServer);
+        if (prewarmedConnection != null) {
+            if (this.serverConnection != null && prewarmedConnection.adopt(pendingConnection)) {
+                return;
+            }
+            prewarmedConnection.close();
+        }
+
+        DownstreamClientPool clientPool = this.proxy.getDownstreamClientPool();
+        EventLoop eventLoop = this.proxy.getConfiguration().isEventLoopAffinity() ? this.upstream.getEventLoop() : null;
+        DownstreamClientPool.Reservation reservation = clientPool.acquire(this.getProtocol(), targetServer.getAddress(), eventLoop);
+        reservation.getClient().thenApply(client -> {
             ClientBindEvent bindEvent = new ClientBindEvent(this, client);
             this.proxy.getEventManager().callEvent(bindEvent);
             return client;
-        }).thenAccept(client -> client.connect(targetServer.getAddress()).whenComplete((downstream, error) -> {
+        }).thenAccept(client -> {
             if (this.disconnected.get()) {
-                client.close();
+                reservation.release();
+                clientPool.close(client, null, false);
+                return;
+            }
+            this.connectDownstream(reservation, client, targetServer, pendingConnection);
+        }).whenComplete((ignore, error) -> {
+            if (error != null) {
+                reservation.release();
+                this.connectFailure(null, targetServer, error);
+            }
+        });
+    }
+
+    private void connectDownstream(DownstreamClientPool.Reservation reservation, BedrockClient client, ServerInfo targetServer, PendingConnection pendingConnection) {
+        DownstreamClientPool clientPool = this.proxy.getDownstreamClientPool();
+        clientPool.connect(reservation, client).whenComplete((downstream, error) -> {
+            if (this.disconnected.get()) {
+                clientPool.close(client, downstream, false);
                 this.getLogger().debug("Discarding downstream connection: Player " + this.getName() + " disconnected!");
                 return;
             }
@@ -227,6 +280,7 @@ public class ProxiedPlayer implements CommandSender {
             }
 
             pendingConnection.setClient(client);
+            pendingConnection.setDownstream(downstream);
 
             if (this.serverConnection == null) {
                 this.serverConnection = new ServerConnection(client, downstream, targetServer);
@@ -237,7 +291,7 @@ public class ProxiedPlayer implements CommandSender {
                 this.upstream.setBatchHandler(new UpstreamBridge(this, downstream));
                 this.hasUpstreamBridge = true;
             } else {
-                downstream.setPacketHandler(new SwitchDownstreamHandler(this, targetServer, client));
+                downstream.setPacketHandler(new SwitchDownstreamHandler(this, targetServer, client, downstream));
                 downstream.setBatchHandler(new TransferBatchBridge(this, this.upstream));
             }
 
@@ -247,19 +301,136 @@ public class ProxiedPlayer implements CommandSender {
 
             SessionInjections.injectNewDownstream(downstream, this, targetServer, client);
             this.getLogger().info("[" + this.getAddress() + "|" + this.getName() + "] -> Downstream [" + targetServer.getServerName() + "] has connected");
+        });
+    }
+
+    /**
+     * Opens connection to the server in background and parks it before the server starts the game.
+     * If player is transferred to the server before the connection expires, the connection is adopted
+     * and the transfer completes much faster. Connection can be prepared only while player is connected to other server
+     * and only to servers listed in prewarm_servers, because the server sees it as a regular login.
+     *
+     * @param serverInfo server which player is likely to be transferred to.
+     * @return true if the connection is being prepared.
+     */
+    public boolean prewarmConnection(ServerInfo serverInfo) {
+        Preconditions.checkNotNull(serverInfo, "Server info can not be null!");
+        ProxyConfig config = this.proxy.getConfiguration();
+        ServerConnection serverConnection = this.serverConnection;
+        if (this.disconnected.get() || serverConnection == null || serverConnection.getInfo() == serverInfo) {
+            return false;
+        }
+
+        if (!config.getPrewarmServers().contains(serverInfo.getServerName())) {
+            // Server sees prewarmed connection as regular login, so it must be allowed explicitly
+            return false;
+        }
+
+        PendingConnection pendingConnection = this.getPendingConnection();
+        if (pendingConnection != null && pendingConnection.getInfo() == serverInfo) {
+            return false;
+        }
+
+        PrewarmedConnection connection;
+        synchronized (this.prewarmedConnections) {
+            if (this.prewarmedConnections.containsKey(serverInfo) || this.prewarmedConnections.size() >= config.getPrewarmMaxConnections()) {
+                return false;
+            }
+            connection = new PrewarmedConnection(this, serverInfo);
+            this.prewarmedConnections.put(serverInfo, connection);
+        }
+        connection.setExpireTask(this.proxy.getScheduler().scheduleDelayed(() -> this.discardPrewarmedConnection(connection), config.getPrewarmTtl() * 20));
+
+        DownstreamClientPool clientPool = this.proxy.getDownstreamClientPool();
+        EventLoop eventLoop = config.isEventLoopAffinity() ? this.upstream.getEventLoop() : null;
+        DownstreamClientPool.Reservation reservation = clientPool.acquire(this.getProtocol(), serverInfo.getAddress(), eventLoop);
+        reservation.getClient().thenAccept(client -> clientPool.connect(reservation, client).whenComplete((downstream, error) -> {
+            if (error != null) {
+                this.prewarmFailure(connection, error);
+                return;
+            }
+
+            downstream.setPacketHandler(new SwitchDownstreamHandler(this, serverInfo, client, downstream, connection));
+            downstream.setBatchHandler(new TransferBatchBridge(this, this.upstream));
+            downstream.setPacketCodec(this.getProtocol().getCodec());
+            downstream.setLogging(WaterdogPE.version().debug());
+            downstream.setCompressionLevel(config.getDownstreamCompression());
+            downstream.addDisconnectHandler(reason -> {
+                if (!connection.isAdopted()) {
+                    this.discardPrewarmedConnection(connection);
+                }
+            });
+
+            if (connection.onConnected(client, downstream)) {
+                this.loginData.doLogin(downstream, this);
+                this.getLogger().debug("[" + this.getAddress() + "|" + this.getName() + "] Prewarming connection to downstream " + serverInfo.getServerName());
+            }
         })).whenComplete((ignore, error) -> {
             if (error != null) {
-                this.connectFailure(null, targetServer, error);
+                reservation.release();
+                this.prewarmFailure(connection, error);
             }
         });
+        return true;
+    }
+
+    /**
+     * Prepares connection to the server predicted by join or reconnect handler, if prewarming is enabled.
+     */
+    public void prewarmPredictedServer() {
+        if (!this.proxy.getConfiguration().isPrewarmConnections() || this.serverConnection == null) {
+            return;
+        }
+
+        ServerInfo currentServer = this.serverConnection.getInfo();
+        ServerInfo predictedServer = this.proxy.getJoinHandler().predictNextServer(this, currentServer);
+        if (predictedServer == null) {
+            predictedServer = this.proxy.getReconnectHandler().predictNextServer(this, currentServer);
+        }
+
+        if (predictedServer != null) {
+            this.prewarmConnection(predictedServer);
+        }
+    }
+
+    private void prewarmFailure(PrewarmedConnection connection, Throwable error) {
+        if (connection.isAdopted()) {
+            this.connectFailure(null, connection.getInfo(), error);
+            return;
+        }
+        this.getLogger().debug("[" + this.getAddress() + "|" + this.getName() + "] Unable to prewarm connection to downstream " + connection.getInfo().getServerName(), error);
+        this.discardPrewarmedConnection(connection);
+    }
+
+    private PrewarmedConnection takePrewarmedConnection(ServerInfo serverInfo) {
+        synchronized (this.prewarmedConnections) {
+            return this.prewarmedConnections.remove(serverInfo);
+        }
+    }
+
+    /**
+     * Closes prewarmed connection which was not adopted by transfer.
+     */
+    public void discardPrewarmedConnection(PrewarmedConnection connection) {
+        synchronized (this.prewarmedConnections) {
+            this.prewarmedConnections.remove(connection.getInfo(), connection);
+        }
+        connection.close();
+    }
+
+    /**
+     * @return servers to which connections are currently prewarmed.
+     */
+    public Collection<ServerInfo> getPrewarmedServers() {
+        synchronized (this.prewarmedConnections) {
+            return new ObjectArrayList<>(this.prewarmedConnections.keySet());
+        }
     }
 
     private void connectFailure(BedrockClient client, ServerInfo targetServer, Throwable error) {
         this.getLogger().debug("[" + this.getAddress() + "|" + this.getName() + "] Unable to connect to downstream " + targetServer.getServerName(), error);
         this.setPendingConnection(null);
-        if (client != null) {
-            client.close();
-        }
+        this.proxy.getDownstreamClientPool().close(client, null, false);
 
         String exceptionMessage = error.getLocalizedMessage();
         if (this.sendToFallback(targetServer, exceptionMessage)) {
@@ -321,6 +492,13 @@ public class ProxiedPlayer implements CommandSender {
             pendingConnection.close();
         }
 
+        synchronized (this.prewarmedConnections) {
+            for (PrewarmedConnection prewarmedConnection : this.prewarmedConnections.values()) {
+                prewarmedConnection.close();
+            }
+            this.prewarmedConnections.clear();
+        }
+
         this.proxy.getPlayerManager().removePlayer(this);
         this.getLogger().info("[" + this.getAddress() + "|" + this.getName() + "] -> Upstream has disconnected");
         if (reason != null) this.getLogger().info("[" + this.getName() + "] -> Disconnected with: §c" + reason);
@@ -355,11 +533,36 @@ public class ProxiedPlayer implements CommandSender {
      * @param packet the packet to send
      */
     public void sendPacket(BedrockPacket packet) {
-        if (this.upstream != null && !this.upstream.isClosed()) {
-            this.upstream.sendPacket(packet);
+        if (this.upstream == null || this.upstream.isClosed()) {
+            return;
+        }
+
+        if (!this.upstreamSequencer.isEmpty() || (this.upstreamCoalescer != null && !this.upstreamCoalescer.isEmpty())) {
+            // Some batches are still being rewritten or merged, packet must not overtake them
+            this.sendPacketSequenced(packet);
+        } else {
+            // Raw packets are not registered in the fast codec
+            this.upstream.sendPacket(PacketUtils.encodeIfRaw(packet, this.getProtocol(), this.upstream));
         }
     }
 
+    private void sendPacketSequenced(BedrockPacket packet) {
+        // Default codec is used because the packet might not be registered in the fast codec
+        BatchWriter writer = new BatchWriter(this.getProtocol().getDefaultCodec(), this.upstream, 1);
+        ByteBuf compressed;
+        try {
+            writer.write(packet);
+            compressed = writer.compress(this.upstream.getCompressionLevel(), this.proxy.getConfiguration().getCompressionThreshold());
+        } finally {
+            writer.release();
+        }
+
+        if (this.upstreamCoalescer != null) {
+            this.upstreamCoalescer.flush();
+        }
+        this.upstreamSequencer.add(compressed);
+    }
+
     /**
      * Sends a TextContainer as a message to a player
      *
@@ -697,40 +900,150 @@ public class ProxiedPlayer implements CommandSender {
         return this.hasUpstreamBridge;
     }
 
+    /**
+     * State of entities, boss bars, player list, scoreboards and entity links which are removed on server transfer.
+     */
+    public PlayerTrackingState getTrackingState() {
+        return this.trackingState;
+    }
+
+    /**
+     * @deprecated use {@link #getTrackingState()}. Returns unmodifiable copy of the tracking state,
+     * changes have to be made through {@link PlayerTrackingState}.
+     */
+    @Deprecated
     public LongSet getEntities() {
-        return this.entities;
+        return this.getTrackingSnapshot().getEntities();
     }
 
+    /**
+     * @deprecated use {@link #getTrackingState()}. Returns unmodifiable copy of the tracking state,
+     * changes have to be made through {@link PlayerTrackingState}.
+     */
+    @Deprecated
     public LongSet getBossbars() {
-        return this.bossbars;
+        return this.getTrackingSnapshot().getBossbars();
     }
 
+    /**
+     * @deprecated use {@link #getTrackingState()}. Returns unmodifiable copy of the tracking state,
+     * changes have to be made through {@link PlayerTrackingState}.
+     */
+    @Deprecated
     public Collection<UUID> getPlayers() {
-        return this.players;
+        return this.getTrackingSnapshot().getPlayers();
     }
 
+    /**
+     * @deprecated use {@link #getTrackingState()}. Returns unmodifiable copy of the tracking state,
+     * changes have to be made through {@link PlayerTrackingState}.
+     */
+    @Deprecated
     public ObjectSet<String> getScoreboards() {
-        return this.scoreboards;
+        return this.getTrackingSnapshot().getScoreboards();
     }
 
+    /**
+     * @deprecated use {@link #getTrackingState()}. Returns unmodifiable copy of the tracking state,
+     * changes have to be made through {@link PlayerTrackingState}.
+     */
+    @Deprecated
     public Long2LongMap getEntityLinks() {
-        return this.entityLinks;
+        return this.getTrackingSnapshot().getEntityLinks();
+    }
+
+    /**
+     * Creates copy of the tracking state for deprecated getters.
+     * Waits for the upstream event loop if called from another thread.
+     */
+    private PlayerTrackingState.Snapshot getTrackingSnapshot() {
+        return this.trackingState.snapshot().join();
     }
 
+    public BatchSequencer getUpstreamSequencer() {
+        return this.upstreamSequencer;
+    }
+
+    public BatchCoalescer getUpstreamCoalescer() {
+        return this.upstreamCoalescer;
+    }
+
+    public PacketHandlerChain getPluginUpstreamHandlers() {
+        return this.pluginUpstreamHandlers;
+    }
+
+    public PacketHandlerChain getPluginDownstreamHandlers() {
+        return this.pluginDownstreamHandlers;
+    }
+
+    /**
+     * Adds handler of packets sent by player. Handlers are called by their priority.
+     */
+    public void addPluginUpstreamHandler(PacketHandler handler) {
+        this.pluginUpstreamHandlers.addHandler(handler);
+    }
+
+    public boolean removePluginUpstreamHandler(PacketHandler handler) {
+        return this.pluginUpstreamHandlers.removeHandler(handler);
+    }
+
+    /**
+     * Adds handler of packets sent by downstream server. Handlers are called by their priority.
+     */
+    public void addPluginDownstreamHandler(PacketHandler handler) {
+        this.pluginDownstreamHandlers.addHandler(handler);
+    }
+
+    public boolean removePluginDownstreamHandler(PacketHandler handler) {
+        return this.pluginDownstreamHandlers.removeHandler(handler);
+    }
+
+    /**
+     * @deprecated use getPluginUpstreamHandlers() instead.
+     */
+    @Deprecated
     public PacketHandler getPluginUpstreamHandler() {
         return this.pluginUpstreamHandler;
     }
 
-    public void setPluginUpstreamHandler(PacketHandler pluginUpstreamHandler) {
+    /**
+     * Replaces handler previously set by this method.
+     *
+     * @deprecated use addPluginUpstreamHandler() instead.
+     */
+    @Deprecated
+    public synchronized void setPluginUpstreamHandler(PacketHandler pluginUpstreamHandler) {
+        if (this.pluginUpstreamHandler != null) {
+            this.pluginUpstreamHandlers.removeHandler(this.pluginUpstreamHandler);
+        }
         this.pluginUpstreamHandler = pluginUpstreamHandler;
+        if (pluginUpstreamHandler != null) {
+            this.pluginUpstreamHandlers.addHandler(pluginUpstreamHandler);
+        }
     }
 
+    /**
+     * @deprecated use getPluginDownstreamHandlers() instead.
+     */
+    @Deprecated
     public PacketHandler getPluginDownstreamHandler() {
         return this.pluginDownstreamHandler;
     }
 
-    public void setPluginDownstreamHandler(PacketHandler pluginDownstreamHandler) {
+    /**
+     * Replaces handler previously set by this method.
+     *
+     * @deprecated use addPluginDownstreamHandler() instead.
+     */
+    @Deprecated
+    public synchronized void setPluginDownstreamHandler(PacketHandler pluginDownstreamHandler) {
+        if (this.pluginDownstreamHandler != null) {
+            this.pluginDownstreamHandlers.removeHandler(this.pluginDownstreamHandler);
+        }
         this.pluginDownstreamHandler = pluginDownstreamHandler;
+        if (pluginDownstreamHandler != null) {
+            this.pluginDownstreamHandlers.addHandler(pluginDownstreamHandler);
+        }
     }
 
     public void setAcceptPlayStatus(boolean acceptPlayStatus) {
@@ -20,6 +20,7 @@ import dev.waterdog.waterdogpe.utils.config.InetSocketAddressConverter;
 import dev.waterdog.waterdogpe.utils.config.ServerInfoConverter;
 import dev.waterdog.waterdogpe.utils.config.ServerList;
 import dev.waterdog.waterdogpe.utils.config.ServerListConverter;
+import io.netty.channel.epoll.Epoll;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.cubespace.Yamler.Config.YamlConfig;
 import net.cubespace.Yamler.Config.*;
@@ -109,6 +110,10 @@ public class ProxyConfig extends YamlConfig {
     @Comment("Fast-codec only decodes the packets required by the proxy, everything else will be passed rawly. Disabling this can create a performance hit")
     private boolean fastCodec = true;
 
+    @Path("keep_entity_id")
+    @Comment("If enabled, the proxy will use runtime entity id assigned by first downstream server instead of random one. Entity ids do not have to be rewritten until player is transferred to server which assigns different id")
+    private boolean keepEntityId = false;
+
     @Path("inject_proxy_commands")
     @Comment("If enabled, the proxy will inject all the proxy commands in the AvailableCommandsPacket, enabling autocompletion")
     private boolean injectCommands = true;
@@ -121,6 +126,34 @@ public class ProxyConfig extends YamlConfig {
     @Comment("Upstream server compression ratio(proxy to downstream server), higher = less bandwidth, more cpu, lower vice versa")
     private int downstreamCompression = 2;
 
+    @Path("compression_threshold")
+    @Comment("Batches re-encoded by proxy which are smaller than this size in bytes are sent without compression, 0 compresses all batches")
+    private int compressionThreshold = 0;
+
+    @Path("adaptive_compression")
+    @Comment("Adjust upstream compression level of each player based on proxy CPU load, player latency and traffic")
+    private boolean adaptiveCompression = false;
+
+    @Path("adaptive_compression_min")
+    @Comment("Lowest compression level used by adaptive compression")
+    private int adaptiveCompressionMin = 1;
+
+    @Path("adaptive_compression_max")
+    @Comment("Highest compression level used by adaptive compression")
+    private int adaptiveCompressionMax = 9;
+
+    @Path("upstream_coalesce_window")
+    @Comment("Time window in microseconds in which batches sent to player are merged to single batch. Set to 0 to disable")
+    private int upstreamCoalesceWindow = 0;
+
+    @Path("upstream_coalesce_threshold")
+    @Comment("Merged batch is sent immediately once its uncompressed size in bytes reaches this threshold")
+    private int upstreamCoalesceThreshold = 16384;
+
+    @Path("upstream_coalesce_immediate")
+    @Comment("Packet types which cause merged batch to be sent immediately")
+    private List<String> upstreamCoalesceImmediate = new ArrayList<>(Arrays.asList("NETWORK_STACK_LATENCY", "PLAY_STATUS", "DISCONNECT", "TRANSFER", "MOVE_PLAYER", "CORRECT_PLAYER_MOVE_PREDICTION"));
+
     @Path("enable_edu_features")
     @Comment("Education features require small adjustments to work correctly. Enable this option if any of downstream servers support education features.")
     private boolean enableEducationFeatures = false;
@@ -137,6 +170,74 @@ public class ProxyConfig extends YamlConfig {
     @Comment("You can set maximum pack size in MB to be cached.")
     private int packCacheSize = 16;
 
+    @Path("chunk_cache_size")
+    @Comment("Maximum size in MB of rewritten chunks cache shared by players. Used only when block palettes of servers differ. Set to 0 to disable.")
+    private int chunkCacheSize = 32;
+
+    @Path("chunk_rewrite_threads")
+    @Comment("Count of threads used to rewrite chunks if block palettes of servers differ. Set to 0 to rewrite chunks on network threads.")
+    private int chunkRewriteThreads = 0;
+
+    @Path("chunk_rewrite_queue")
+    @Comment("Maximum count of batches waiting for chunk rewrite. If the queue is full, chunks are rewritten on network threads.")
+    private int chunkRewriteQueue = 256;
+
+    @Path("downstream_client_pool_size")
+    @Comment("Count of shared sockets used to connect to downstream servers per RakNet version and network thread. Set to 0 to bind new socket for every connection.")
+    private int downstreamClientPoolSize = 0;
+
+    @Path("event_loop_affinity")
+    @Comment("Handle downstream connection of player on the same network thread as upstream connection, so packets are not passed between threads")
+    private boolean eventLoopAffinity = true;
+
+    @Path("login_threads")
+    @Comment("Count of threads used to verify login chains and prepare encryption. Set to 0 to verify logins on network threads.")
+    private int loginThreads = 0;
+
+    @Path("login_queue")
+    @Comment("Maximum count of logins waiting for verification. If the queue is full, new logins are rejected.")
+    private int loginQueue = 65536;
+
+    @Path("login_queue_timeout")
+    @Comment("Maximum time in milliseconds login can wait for verification. Logins which waited longer are rejected.")
+    private int loginQueueTimeout = 5000;
+
+    @Path("login_chain_cache_size")
+    @Comment("Maximum count of verified login chains which are cached for reconnecting players. Set to 0 to disable.")
+    private int loginChainCacheSize = 4096;
+
+    @Path("login_chain_cache_ttl")
+    @Comment("Maximum time in seconds for which verified login chain is cached")
+    private int loginChainCacheTtl = 600;
+
+    @Path("transfer_queue_max_packets")
+    @Comment("Maximum count of packets queued during server transfer before they are sent to the player")
+    private int transferQueueMaxPackets = 8192;
+
+    @Path("transfer_queue_max_size")
+    @Comment("Maximum size in kilobytes of packets queued during server transfer before they are sent to the player")
+    private int transferQueueMaxSize = 4096;
+
+    @Path("prewarm_connections")
+    @Comment("Open connection to the server which player is likely to be transferred to next in background, so the transfer is faster")
+    private boolean prewarmConnections = false;
+
+    @Path("prewarm_servers")
+    @Comment("Names of servers to which connections can be opened in background. Server sees prewarmed player as fully logged in")
+    private List<String> prewarmServers = new ArrayList<>();
+
+    @Path("prewarm_max_connections")
+    @Comment("Maximum count of connections opened in background per player")
+    private int prewarmMaxConnections = 1;
+
+    @Path("prewarm_ttl")
+    @Comment("Time in seconds after which connection opened in background is closed if player was not transferred")
+    private int prewarmTtl = 30;
+
+    @Path("upstream_bind_sockets")
+    @Comment("Count of sockets bound to the proxy port using SO_REUSEPORT, so the kernel spreads players between event loops. Requires native epoll transport. Set to -1 to auto-detect by core count.")
+    private int upstreamBindSockets = -1;
+
     @Path("default_idle_threads")
     @Comment("Creating threads may be in some situations expensive. Specify minimum count of idle threads per internal thread executors. Set to -1 to auto-detect by core count.")
     private int defaultIdleThreads = -1;
@@ -201,6 +302,14 @@ public class ProxyConfig extends YamlConfig {
         return this.fastCodec;
     }
 
+    public boolean keepEntityId() {
+        return this.keepEntityId;
+    }
+
+    public void setKeepEntityId(boolean keepEntityId) {
+        this.keepEntityId = keepEntityId;
+    }
+
     public void setUseFastTransfer(boolean fastTransfer) {
         this.fastTransfer = fastTransfer;
     }
@@ -241,6 +350,34 @@ public class ProxyConfig extends YamlConfig {
         return this.downstreamCompression;
     }
 
+    public int getCompressionThreshold() {
+        return this.compressionThreshold;
+    }
+
+    public boolean isAdaptiveCompression() {
+        return this.adaptiveCompression;
+    }
+
+    public int getAdaptiveCompressionMin() {
+        return this.adaptiveCompressionMin;
+    }
+
+    public int getAdaptiveCompressionMax() {
+        return this.adaptiveCompressionMax;
+    }
+
+    public int getUpstreamCoalesceWindow() {
+        return this.upstreamCoalesceWindow;
+    }
+
+    public int getUpstreamCoalesceThreshold() {
+        return this.upstreamCoalesceThreshold;
+    }
+
+    public List<String> getUpstreamCoalesceImmediate() {
+        return this.upstreamCoalesceImmediate;
+    }
+
     public boolean isDebug() {
         return this.debug;
     }
@@ -281,6 +418,148 @@ public class ProxyConfig extends YamlConfig {
         this.packCacheSize = packCacheSize;
     }
 
+    public int getChunkCacheSize() {
+        return this.chunkCacheSize;
+    }
+
+    public void setChunkCacheSize(int chunkCacheSize) {
+        this.chunkCacheSize = chunkCacheSize;
+    }
+
+    public int getChunkRewriteThreads() {
+        return this.chunkRewriteThreads;
+    }
+
+    public void setChunkRewriteThreads(int chunkRewriteThreads) {
+        this.chunkRewriteThreads = chunkRewriteThreads;
+    }
+
+    public int getChunkRewriteQueue() {
+        return this.chunkRewriteQueue;
+    }
+
+    public void setChunkRewriteQueue(int chunkRewriteQueue) {
+        this.chunkRewriteQueue = chunkRewriteQueue;
+    }
+
+    public int getDownstreamClientPoolSize() {
+        return this.downstreamClientPoolSize;
+    }
+
+    public void setDownstreamClientPoolSize(int downstreamClientPoolSize) {
+        this.downstreamClientPoolSize = downstreamClientPoolSize;
+    }
+
+    public boolean isEventLoopAffinity() {
+        return this.eventLoopAffinity;
+    }
+
+    public void setEventLoopAffinity(boolean eventLoopAffinity) {
+        this.eventLoopAffinity = eventLoopAffinity;
+    }
+
+    public int getLoginThreads() {
+        return this.loginThreads;
+    }
+
+    public void setLoginThreads(int loginThreads) {
+        this.loginThreads = loginThreads;
+    }
+
+    public int getLoginQueue() {
+        return this.loginQueue;
+    }
+
+    public void setLoginQueue(int loginQueue) {
+        this.loginQueue = loginQueue;
+    }
+
+    public int getLoginQueueTimeout() {
+        return this.loginQueueTimeout;
+    }
+
+    public void setLoginQueueTimeout(int loginQueueTimeout) {
+        this.loginQueueTimeout = loginQueueTimeout;
+    }
+
+    public int getLoginChainCacheSize() {
+        return this.loginChainCacheSize;
+    }
+
+    public void setLoginChainCacheSize(int loginChainCacheSize) {
+        this.loginChainCacheSize = loginChainCacheSize;
+    }
+
+    public int getLoginChainCacheTtl() {
+        return this.loginChainCacheTtl;
+    }
+
+    public void setLoginChainCacheTtl(int loginChainCacheTtl) {
+        this.loginChainCacheTtl = loginChainCacheTtl;
+    }
+
+    public int getTransferQueueMaxPackets() {
+        return this.transferQueueMaxPackets;
+    }
+
+    public void setTransferQueueMaxPackets(int transferQueueMaxPackets) {
+        this.transferQueueMaxPackets = transferQueueMaxPackets;
+    }
+
+    public int getTransferQueueMaxSize() {
+        return this.transferQueueMaxSize;
+    }
+
+    public void setTransferQueueMaxSize(int transferQueueMaxSize) {
+        this.transferQueueMaxSize = transferQueueMaxSize;
+    }
+
+    public boolean isPrewarmConnections() {
+        return this.prewarmConnections;
+    }
+
+    public void setPrewarmConnections(boolean prewarmConnections) {
+        this.prewarmConnections = prewarmConnections;
+    }
+
+    public List<String> getPrewarmServers() {
+        return this.prewarmServers;
+    }
+
+    public void setPrewarmServers(List<String> prewarmServers) {
+        this.prewarmServers = prewarmServers;
+    }
+
+    public int getPrewarmMaxConnections() {
+        return this.prewarmMaxConnections;
+    }
+
+    public void setPrewarmMaxConnections(int prewarmMaxConnections) {
+        this.prewarmMaxConnections = prewarmMaxConnections;
+    }
+
+    public int getPrewarmTtl() {
+        return this.prewarmTtl;
+    }
+
+    public void setPrewarmTtl(int prewarmTtl) {
+        this.prewarmTtl = prewarmTtl;
+    }
+
+    /**
+     * @return configured count of upstream sockets. Auto-detected value is one socket per core with native epoll transport, otherwise single socket.
+     */
+    public int getUpstreamBindSockets() {
+        if (this.upstreamBindSockets > 0) {
+            return this.upstreamBindSockets;
+        }
+        return Epoll.isAvailable() ? Runtime.getRuntime().availableProcessors() : 1;
+    }
+
+    public void setUpstreamBindSockets(int upstreamBindSockets) {
+        this.upstreamBindSockets = upstreamBindSockets;
+    }
+
     public ServerList getServerInfoMap() {
         return this.serverInfoMap;
     }
@@ -32,4 +32,18 @@ public interface IJoinHandler {
      * @return ServerInfo if a server is found, or null if no server was found. null will lead to the player getting kicked.
      */
     ServerInfo determineServer(ProxiedPlayer player);
+
+    /**
+     * Predicts server which player is likely to be transferred to next, so the connection can be prepared in background.
+     * Called after player was transferred if connection prewarming is enabled.
+     * Connection is prepared only if the server is listed in prewarm_servers.
+     * {@link VanillaJoinHandler} predicts the first server from join priorities.
+     *
+     * @param player        the player who was transferred
+     * @param currentServer the ServerInfo of the server which player is connected to
+     * @return ServerInfo of the predicted server or null if no connection should be prepared.
+     */
+    default ServerInfo predictNextServer(ProxiedPlayer player, ServerInfo currentServer) {
+        return null;
+    }
 }
@@ -30,4 +30,16 @@ public interface IReconnectHandler {
      * @return a ServerInfo if there was a valid server found for fallback, or null if no server was found. null will lead to the player getting kicked.
      */
     ServerInfo getFallbackServer(ProxiedPlayer player, ServerInfo oldServer, String kickMessage);
+
+    /**
+     * Predicts server which player is likely to be transferred to next, so the connection can be prepared in background.
+     * Used only if join handler did not predict any server. No server is predicted by default.
+     *
+     * @param player        the player who was transferred
+     * @param currentServer the ServerInfo of the server which player is connected to
+     * @return ServerInfo of the predicted server or null if no connection should be prepared.
+     */
+    default ServerInfo predictNextServer(ProxiedPlayer player, ServerInfo currentServer) {
+        return null;
+    }
 }
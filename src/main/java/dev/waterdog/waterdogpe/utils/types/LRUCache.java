@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.utils.types;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread safe cache which evicts least recently used entries once the total weight of entries exceeds the limit.
+ * Weight of each entry is given by weigher, so cache can be bounded by count of entries or by size of cached data.
+ */
+public class LRUCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates cache bounded by count of entries.
+     */
+    public LRUCache(long maxEntries) {
+        this(maxEntries, value -> 1);
+    }
+
+    /**
+     * @param maxWeight maximum total weight of cached entries.
+     * @param weigher   function which returns weight of cached value.
+     */
+    public LRUCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return cached value or null if key is not cached.
+     */
+    public V get(K key) {
+        return this.get(key, null);
+    }
+
+    /**
+     * @param validator predicate which cached value has to match. Values which do not match are removed. Can be null.
+     * @return cached value or null if key is not cached or value is not valid anymore.
+     */
+    public V get(K key, Predicate<V> validator) {
+        V value;
+        synchronized (this.entries) {
+            value = this.entries.get(key);
+            if (value != null && validator != null && !validator.test(value)) {
+                this.entries.remove(key);
+                this.weight -= this.weigher.applyAsLong(value);
+                value = null;
+            }
+        }
+
+        if (value == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Caches the value and evicts least recently used entries if needed.
+     * Values which are heavier than the limit are not cached.
+     */
+    public void put(K key, V value) {
+        long entryWeight = this.weigher.applyAsLong(value);
+        if (entryWeight > this.maxWeight) {
+            return;
+        }
+
+        synchronized (this.entries) {
+            V previous = this.entries.put(key, value);
+            if (previous != null) {
+                this.weight -= this.weigher.applyAsLong(previous);
+            }
+            this.weight += entryWeight;
+
+            Iterator<V> iterator = this.entries.values().iterator();
+            while (this.weight > this.maxWeight && iterator.hasNext()) {
+                this.weight -= this.weigher.applyAsLong(iterator.next());
+                iterator.remove();
+                this.evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.weight = 0;
+        }
+    }
+
+    public long getMaxWeight() {
+        return this.maxWeight;
+    }
+
+    /**
+     * @return total weight of cached entries.
+     */
+    public long getWeight() {
+        synchronized (this.entries) {
+            return this.weight;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long total = hits + this.misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -15,27 +15,59 @@
 
 package dev.waterdog.waterdogpe.utils.types;
 
+import com.google.common.base.Preconditions;
 import com.nukkitx.protocol.bedrock.BedrockPacket;
 import com.nukkitx.protocol.bedrock.BedrockSession;
 import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
+import dev.waterdog.waterdogpe.event.EventPriority;
+import dev.waterdog.waterdogpe.network.protocol.PacketInterest;
 
 /**
  * Using PacketHandler class plugins can safely handle packet sent from upstream/downstream.
  * Handle method will be only invoked if packet was not canceled by proxy handlers.
+ * Multiple handlers can be registered to one player, handlers with higher priority are called first.
+ * By default handler receives only packet types for which it overrides handle() method,
+ * or all packets if it overrides handlePacket() method. This can be changed by overriding getInterest() method.
  */
 public abstract class PacketHandler implements BedrockPacketHandler {
 
     private final BedrockSession session;
+    private final EventPriority priority;
 
     public PacketHandler(BedrockSession session) {
+        this(session, EventPriority.NORMAL);
+    }
+
+    public PacketHandler(BedrockSession session, EventPriority priority) {
+        Preconditions.checkNotNull(priority, "Priority can not be null!");
         this.session = session;
+        this.priority = priority;
     }
 
     public boolean handlePacket(BedrockPacket packet) {
         return packet.handle(this);
     }
 
+    /**
+     * @return packet types this handler should receive. Result must not change over time.
+     */
+    public PacketInterest getInterest() {
+        try {
+            if (this.getClass().getMethod("handlePacket", BedrockPacket.class).getDeclaringClass() != PacketHandler.class) {
+                // Handler dispatches packets on its own, so we can not know which packets it needs
+                return PacketInterest.ALL;
+            }
+        } catch (NoSuchMethodException | SecurityException e) {
+            return PacketInterest.ALL;
+        }
+        return PacketInterest.of(this.getClass());
+    }
+
     public BedrockSession getSession() {
         return this.session;
     }
+
+    public EventPriority getPriority() {
+        return this.priority;
+    }
 }
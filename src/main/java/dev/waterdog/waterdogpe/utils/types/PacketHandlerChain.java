@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.utils.types;
+
+import com.google.common.base.Preconditions;
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
+import dev.waterdog.waterdogpe.network.protocol.PacketInterest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Priority ordered list of plugin packet handlers of one connection direction.
+ * Handlers can be added or removed from any thread, while the packets are dispatched from the session thread.
+ * Handlers are invoked from HIGHEST to LOWEST priority and only for packet types they are interested in.
+ */
+public class PacketHandlerChain {
+
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final Comparator<Entry> PRIORITY_ORDER = Comparator.comparing((Entry entry) -> entry.handler.getPriority()).reversed();
+
+    private volatile Entry[] entries = EMPTY;
+    private volatile PacketInterest interest = PacketInterest.NONE;
+
+    public synchronized void addHandler(PacketHandler handler) {
+        Preconditions.checkNotNull(handler, "Handler can not be null!");
+        for (Entry entry : this.entries) {
+            if (entry.handler == handler) {
+                return;
+            }
+        }
+
+        Entry[] entries = Arrays.copyOf(this.entries, this.entries.length + 1);
+        entries[entries.length - 1] = new Entry(handler, handler.getInterest());
+        // Stable sort keeps registration order of handlers with same priority
+        Arrays.sort(entries, PRIORITY_ORDER);
+        this.update(entries);
+    }
+
+    public synchronized boolean removeHandler(PacketHandler handler) {
+        Entry[] entries = this.entries;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].handler != handler) {
+                continue;
+            }
+
+            Entry[] newEntries = new Entry[entries.length - 1];
+            System.arraycopy(entries, 0, newEntries, 0, i);
+            System.arraycopy(entries, i + 1, newEntries, i, entries.length - i - 1);
+            this.update(newEntries);
+            return true;
+        }
+        return false;
+    }
+
+    private void update(Entry[] entries) {
+        PacketInterest interest = PacketInterest.NONE;
+        for (Entry entry : entries) {
+            interest = interest.union(entry.interest);
+        }
+        this.entries = entries;
+        this.interest = interest;
+    }
+
+    /**
+     * @param type type of the packet.
+     * @return if at least one of the handlers wants to receive this packet type.
+     */
+    public boolean isInterested(BedrockPacketType type) {
+        return this.interest.contains(type);
+    }
+
+    /**
+     * Passes packet to all handlers which are interested in its type.
+     * CancelSignalException thrown by a handler stops the chain.
+     *
+     * @param packet packet to be handled.
+     * @return if packet was changed by any handler.
+     */
+    public boolean handlePacket(BedrockPacket packet) {
+        BedrockPacketType type = packet.getPacketType();
+        boolean changed = false;
+        for (Entry entry : this.entries) {
+            if (entry.interest.contains(type) && entry.handler.handlePacket(packet)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return this.entries.length == 0;
+    }
+
+    public List<PacketHandler> getHandlers() {
+        List<PacketHandler> handlers = new ArrayList<>();
+        for (Entry entry : this.entries) {
+            handlers.add(entry.handler);
+        }
+        return Collections.unmodifiableList(handlers);
+    }
+
+    private static class Entry {
+        private final PacketHandler handler;
+        private final PacketInterest interest;
+
+        private Entry(PacketHandler handler, PacketInterest interest) {
+            this.handler = handler;
+            this.interest = interest;
+        }
+    }
+}
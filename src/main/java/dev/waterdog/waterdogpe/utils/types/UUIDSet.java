@@ -0,0 +1,294 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.utils.types;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.*;
+
+/**
+ * Open addressing hash set which stores UUIDs as pairs of longs instead of UUID objects.
+ * Slot with both longs equal to zero is empty, nil UUID is therefore tracked separately.
+ * UUID objects are created only when the set is iterated. This class is not thread safe.
+ */
+public class UUIDSet extends AbstractSet<UUID> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private int mask;
+    private int size;
+    private boolean containsNil;
+
+    public UUIDSet() {
+        this.allocate(DEFAULT_CAPACITY);
+    }
+
+    public UUIDSet(UUIDSet other) {
+        this.mostBits = other.mostBits.clone();
+        this.leastBits = other.leastBits.clone();
+        this.mask = other.mask;
+        this.size = other.size;
+        this.containsNil = other.containsNil;
+    }
+
+    private void allocate(int capacity) {
+        this.mostBits = new long[capacity];
+        this.leastBits = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private int slot(long mostBits, long leastBits) {
+        return (int) HashCommon.mix(mostBits ^ leastBits) & this.mask;
+    }
+
+    @Override
+    public boolean add(UUID uuid) {
+        return this.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean add(long mostBits, long leastBits) {
+        if (mostBits == 0 && leastBits == 0) {
+            if (this.containsNil) {
+                return false;
+            }
+            this.containsNil = true;
+            this.size++;
+            return true;
+        }
+
+        int slot = this.slot(mostBits, leastBits);
+        while (this.mostBits[slot] != 0 || this.leastBits[slot] != 0) {
+            if (this.mostBits[slot] == mostBits && this.leastBits[slot] == leastBits) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        this.mostBits[slot] = mostBits;
+        this.leastBits[slot] = leastBits;
+        if (++this.size >= (this.mask + 1) * LOAD_FACTOR) {
+            this.rehash((this.mask + 1) << 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        if (!(object instanceof UUID)) {
+            return false;
+        }
+        UUID uuid = (UUID) object;
+        return this.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean contains(long mostBits, long leastBits) {
+        if (mostBits == 0 && leastBits == 0) {
+            return this.containsNil;
+        }
+        return this.find(mostBits, leastBits) >= 0;
+    }
+
+    private int find(long mostBits, long leastBits) {
+        int slot = this.slot(mostBits, leastBits);
+        while (this.mostBits[slot] != 0 || this.leastBits[slot] != 0) {
+            if (this.mostBits[slot] == mostBits && this.leastBits[slot] == leastBits) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        if (!(object instanceof UUID)) {
+            return false;
+        }
+        UUID uuid = (UUID) object;
+        return this.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean remove(long mostBits, long leastBits) {
+        if (mostBits == 0 && leastBits == 0) {
+            if (!this.containsNil) {
+                return false;
+            }
+            this.containsNil = false;
+            this.size--;
+            return true;
+        }
+
+        int slot = this.find(mostBits, leastBits);
+        if (slot < 0) {
+            return false;
+        }
+        this.shiftKeys(slot, null);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Removes entry at given slot and moves following entries of the probe sequence back,
+     * so no tombstones are needed.
+     *
+     * @param wrapped list to which entries moved from the beginning to the end of the table are added, or null.
+     */
+    private void shiftKeys(int slot, List<UUID> wrapped) {
+        int last;
+        while (true) {
+            last = slot;
+            slot = (slot + 1) & this.mask;
+            while (true) {
+                if (this.mostBits[slot] == 0 && this.leastBits[slot] == 0) {
+                    this.mostBits[last] = 0;
+                    this.leastBits[last] = 0;
+                    return;
+                }
+
+                int home = this.slot(this.mostBits[slot], this.leastBits[slot]);
+                if (last <= slot ? last >= home || home > slot : last >= home && home > slot) {
+                    break;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            if (wrapped != null && slot < last) {
+                wrapped.add(new UUID(this.mostBits[slot], this.leastBits[slot]));
+            }
+            this.mostBits[last] = this.mostBits[slot];
+            this.leastBits[last] = this.leastBits[slot];
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] mostBits = this.mostBits;
+        long[] leastBits = this.leastBits;
+        this.allocate(capacity);
+
+        for (int i = 0; i < mostBits.length; i++) {
+            if (mostBits[i] == 0 && leastBits[i] == 0) {
+                continue;
+            }
+
+            int slot = this.slot(mostBits[i], leastBits[i]);
+            while (this.mostBits[slot] != 0 || this.leastBits[slot] != 0) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.mostBits[slot] = mostBits[i];
+            this.leastBits[slot] = leastBits[i];
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (this.mask + 1 > DEFAULT_CAPACITY) {
+            // Do not keep big arrays after transfer
+            this.allocate(DEFAULT_CAPACITY);
+        } else {
+            Arrays.fill(this.mostBits, 0);
+            Arrays.fill(this.leastBits, 0);
+        }
+        this.size = 0;
+        this.containsNil = false;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return approximate memory used by the set in bytes.
+     */
+    public long getMemoryUsage() {
+        return 48 + 2L * (16 + (long) Long.BYTES * this.mostBits.length);
+    }
+
+    @Override
+    public Iterator<UUID> iterator() {
+        return new UUIDIterator();
+    }
+
+    /**
+     * Iterates the table from its end, so entries moved back by removal are never visited twice.
+     * Entries which wrap around from the beginning of the table to the already visited end are returned at last.
+     */
+    private class UUIDIterator implements Iterator<UUID> {
+        private static final int NO_SLOT = -1;
+        private static final int NIL_SLOT = -2;
+        private static final int WRAPPED_SLOT = -3;
+
+        private int pos = UUIDSet.this.mask + 1;
+        private int last = NO_SLOT;
+        private int remaining = UUIDSet.this.size;
+        private boolean mustReturnNil = UUIDSet.this.containsNil;
+        private List<UUID> wrapped;
+
+        @Override
+        public boolean hasNext() {
+            return this.remaining > 0;
+        }
+
+        @Override
+        public UUID next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.remaining--;
+
+            if (this.mustReturnNil) {
+                this.mustReturnNil = false;
+                this.last = NIL_SLOT;
+                return new UUID(0, 0);
+            }
+
+            long[] mostBits = UUIDSet.this.mostBits;
+            long[] leastBits = UUIDSet.this.leastBits;
+            while (--this.pos >= 0) {
+                if (mostBits[this.pos] != 0 || leastBits[this.pos] != 0) {
+                    this.last = this.pos;
+                    return new UUID(mostBits[this.pos], leastBits[this.pos]);
+                }
+            }
+
+            this.last = WRAPPED_SLOT;
+            return this.wrapped.get(-this.pos - 1);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == NO_SLOT) {
+                throw new IllegalStateException();
+            }
+
+            if (this.last == NIL_SLOT) {
+                UUIDSet.this.containsNil = false;
+                UUIDSet.this.size--;
+            } else if (this.last == WRAPPED_SLOT) {
+                UUIDSet.this.remove(this.wrapped.set(-this.pos - 1, null));
+            } else {
+                if (this.wrapped == null) {
+                    this.wrapped = new ArrayList<>(2);
+                }
+                UUIDSet.this.shiftKeys(this.last, this.wrapped);
+                UUIDSet.this.size--;
+            }
+            this.last = NO_SLOT;
+        }
+    }
+}
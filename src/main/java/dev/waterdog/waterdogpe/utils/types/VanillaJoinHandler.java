@@ -31,4 +31,11 @@ public class VanillaJoinHandler implements IJoinHandler {
     public ServerInfo determineServer(ProxiedPlayer player) {
         return this.server.getServerInfo(this.server.getConfiguration().getPriorities().get(0));
     }
+
+    @Override
+    public ServerInfo predictNextServer(ProxiedPlayer player, ServerInfo currentServer) {
+        // Players usually return to the lobby from other servers
+        ServerInfo lobbyServer = this.determineServer(player);
+        return lobbyServer == currentServer ? null : lobbyServer;
+    }
 }
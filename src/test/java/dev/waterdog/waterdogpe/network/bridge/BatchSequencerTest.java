@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.bridge;
+
+import com.nukkitx.protocol.bedrock.BedrockSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BatchSequencerTest {
+
+    @Test
+    public void testBatchesAreSentInReservedOrder() {
+        BedrockSession session = mock(BedrockSession.class);
+        BatchSequencer sequencer = new BatchSequencer(session);
+        ByteBuf first = Unpooled.buffer().writeByte(1);
+        ByteBuf second = Unpooled.buffer().writeByte(2);
+        ByteBuf third = Unpooled.buffer().writeByte(3);
+
+        BatchSequencer.Slot firstSlot = sequencer.reserve();
+        BatchSequencer.Slot secondSlot = sequencer.reserve();
+
+        // Batch added after pending slots has to wait for them
+        sequencer.add(third);
+        sequencer.complete(secondSlot, second);
+        verify(session, never()).sendWrapped(any(), anyBoolean());
+        assertFalse(sequencer.isEmpty());
+
+        sequencer.complete(firstSlot, first);
+        InOrder order = inOrder(session);
+        order.verify(session).sendWrapped(same(first), anyBoolean());
+        order.verify(session).sendWrapped(same(second), anyBoolean());
+        order.verify(session).sendWrapped(same(third), anyBoolean());
+        assertTrue(sequencer.isEmpty());
+        assertEquals(3, sequencer.getSentBytes());
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+        assertEquals(0, third.refCnt());
+    }
+
+    @Test
+    public void testDroppedSlotReleasesFollowingBatches() {
+        BedrockSession session = mock(BedrockSession.class);
+        BatchSequencer sequencer = new BatchSequencer(session);
+        ByteBuf batch = Unpooled.buffer().writeByte(1);
+
+        BatchSequencer.Slot slot = sequencer.reserve();
+        sequencer.add(batch);
+        sequencer.complete(slot, null);
+
+        verify(session, times(1)).sendWrapped(any(), anyBoolean());
+        verify(session).sendWrapped(same(batch), anyBoolean());
+        assertTrue(sequencer.isEmpty());
+    }
+
+    @Test
+    public void testBatchesAreReleasedOnClosedSession() {
+        BedrockSession session = mock(BedrockSession.class);
+        when(session.isClosed()).thenReturn(true);
+        BatchSequencer sequencer = new BatchSequencer(session);
+        ByteBuf batch = Unpooled.buffer().writeByte(1);
+
+        sequencer.add(batch);
+        verify(session, never()).sendWrapped(any(), anyBoolean());
+        assertEquals(0, batch.refCnt());
+        assertEquals(0, sequencer.getSentBytes());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.bridge;
+
+import com.nukkitx.protocol.bedrock.BedrockPacket;
+import com.nukkitx.protocol.bedrock.packet.TextPacket;
+import com.nukkitx.protocol.bedrock.packet.UnknownPacket;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferQueueTest {
+
+    @Test
+    public void testPacketsKeepOrder() {
+        TransferQueue queue = new TransferQueue(16, 1024);
+        UnknownPacket first = createPacket(10);
+        TextPacket second = new TextPacket();
+        UnknownPacket third = createPacket(20);
+        queue.add(first);
+        queue.add(second);
+        queue.add(third);
+
+        List<BedrockPacket> packets = queue.getPackets();
+        assertEquals(3, packets.size());
+        assertSame(first, packets.get(0));
+        assertSame(second, packets.get(1));
+        assertSame(third, packets.get(2));
+
+        // Returned list is a copy
+        packets.clear();
+        assertEquals(3, queue.getCount());
+        queue.release();
+    }
+
+    @Test
+    public void testSizeOfPackets() {
+        TransferQueue queue = new TransferQueue(16, 1024);
+        queue.add(createPacket(100));
+        assertEquals(100, queue.getBytes());
+
+        // Decoded packets use default size
+        queue.add(new TextPacket());
+        assertTrue(queue.getBytes() > 100);
+        queue.release();
+    }
+
+    @Test
+    public void testCountLimit() {
+        TransferQueue queue = new TransferQueue(2, 1024);
+        queue.add(createPacket(1));
+        queue.add(createPacket(1));
+        assertFalse(queue.isOverLimit());
+
+        queue.add(createPacket(1));
+        assertTrue(queue.isOverLimit());
+        queue.release();
+    }
+
+    @Test
+    public void testBytesLimit() {
+        TransferQueue queue = new TransferQueue(16, 100);
+        queue.add(createPacket(100));
+        assertFalse(queue.isOverLimit());
+
+        queue.add(createPacket(1));
+        assertTrue(queue.isOverLimit());
+        queue.release();
+    }
+
+    @Test
+    public void testReleaseResetsQueue() {
+        TransferQueue queue = new TransferQueue(1, 100);
+        queue.add(createPacket(100));
+        queue.add(createPacket(100));
+        assertTrue(queue.isOverLimit());
+
+        queue.release();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getCount());
+        assertEquals(0, queue.getBytes());
+        assertFalse(queue.isOverLimit());
+    }
+
+    private static UnknownPacket createPacket(int size) {
+        UnknownPacket packet = new UnknownPacket();
+        packet.setPayload(Unpooled.wrappedBuffer(new byte[size]));
+        return packet;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.protocol;
+
+import com.nukkitx.network.VarInts;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchWriterTest {
+
+    @Test
+    public void testHeaderPacking() throws DataFormatException {
+        BatchWriter writer = new BatchWriter(null, null);
+        ByteBuf batch = null;
+        try {
+            writer.writeRaw(9, 1, 2, Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+            writer.writeRaw(0x7ff, 3, 3, Unpooled.EMPTY_BUFFER);
+            assertEquals(2, writer.getPacketCount());
+
+            batch = inflate(writer, 6);
+            assertEquals(writer.getSize(), batch.readableBytes());
+
+            // Header 9 | 1 << 10 | 2 << 12 takes two bytes
+            assertEquals(5, VarInts.readUnsignedInt(batch));
+            assertEquals(9 | 1 << 10 | 2 << 12, VarInts.readUnsignedInt(batch));
+            assertEquals(1, batch.readByte());
+            assertEquals(2, batch.readByte());
+            assertEquals(3, batch.readByte());
+
+            // Packet id is limited to 10 bits
+            assertEquals(2, VarInts.readUnsignedInt(batch));
+            assertEquals(0x3ff | 3 << 10 | 3 << 12, VarInts.readUnsignedInt(batch));
+            assertFalse(batch.isReadable());
+        } finally {
+            writer.release();
+            if (batch != null) {
+                batch.release();
+            }
+        }
+    }
+
+    @Test
+    public void testSmallBatchIsStored() throws DataFormatException {
+        byte[] payload = new byte[100];
+        BatchWriter writer = new BatchWriter(null, null);
+        try {
+            writer.writeRaw(1, 0, 0, Unpooled.wrappedBuffer(payload));
+            ByteBuf stored = writer.compress(9, 256);
+            ByteBuf deflated = writer.compress(9, 0);
+            try {
+                // Stored block contains whole payload, while zeros are deflated to few bytes
+                assertTrue(stored.readableBytes() > writer.getSize());
+                assertTrue(deflated.readableBytes() < writer.getSize());
+            } finally {
+                stored.release();
+                deflated.release();
+            }
+
+            ByteBuf batch = inflate(writer, 0);
+            try {
+                assertEquals(writer.getSize(), batch.readableBytes());
+            } finally {
+                batch.release();
+            }
+        } finally {
+            writer.release();
+        }
+    }
+
+    private static ByteBuf inflate(BatchWriter writer, int level) throws DataFormatException {
+        ByteBuf compressed = writer.compress(level);
+        try {
+            // Inflater without zlib wrapper requires extra dummy byte after the input
+            byte[] input = new byte[compressed.readableBytes() + 1];
+            compressed.readBytes(input, 0, compressed.readableBytes());
+
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(input);
+            byte[] output = new byte[writer.getSize() + 1];
+            int size = inflater.inflate(output);
+            inflater.end();
+            return Unpooled.wrappedBuffer(output, 0, size);
+        } finally {
+            compressed.release();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.protocol;
+
+import com.nukkitx.protocol.bedrock.BedrockPacketType;
+import com.nukkitx.protocol.bedrock.handler.BedrockPacketHandler;
+import com.nukkitx.protocol.bedrock.packet.StartGamePacket;
+import com.nukkitx.protocol.bedrock.packet.TextPacket;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PacketInterestTest {
+
+    @Test
+    public void testHandlerWithoutOverridesHasNoInterest() {
+        assertTrue(PacketInterest.of(EmptyHandler.class).isEmpty());
+    }
+
+    @Test
+    public void testOverriddenHandleMethodsAreScanned() {
+        PacketInterest interest = PacketInterest.of(TextHandler.class);
+        assertTrue(interest.contains(BedrockPacketType.TEXT));
+        assertFalse(interest.contains(BedrockPacketType.START_GAME));
+    }
+
+    @Test
+    public void testInheritedOverridesAreScanned() {
+        PacketInterest interest = PacketInterest.of(StartGameHandler.class);
+        assertTrue(interest.contains(BedrockPacketType.TEXT));
+        assertTrue(interest.contains(BedrockPacketType.START_GAME));
+        assertFalse(interest.contains(BedrockPacketType.LEVEL_CHUNK));
+    }
+
+    @Test
+    public void testHandlerInterestIsCached() {
+        assertSame(PacketInterest.of(TextHandler.class), PacketInterest.of(TextHandler.class));
+    }
+
+    @Test
+    public void testUnknownTypeNamesAreIgnored() {
+        PacketInterest interest = PacketInterest.of(Arrays.asList("text", "NOT_A_PACKET"));
+        assertTrue(interest.contains(BedrockPacketType.TEXT));
+        assertFalse(interest.contains(BedrockPacketType.START_GAME));
+    }
+
+    @Test
+    public void testUnion() {
+        PacketInterest interest = PacketInterest.of(BedrockPacketType.TEXT).union(PacketInterest.of(BedrockPacketType.START_GAME));
+        assertTrue(interest.contains(BedrockPacketType.TEXT));
+        assertTrue(interest.contains(BedrockPacketType.START_GAME));
+        assertSame(PacketInterest.ALL, PacketInterest.ALL.union(PacketInterest.NONE));
+    }
+
+    public static class EmptyHandler implements BedrockPacketHandler {
+    }
+
+    public static class TextHandler implements BedrockPacketHandler {
+        @Override
+        public boolean handle(TextPacket packet) {
+            return true;
+        }
+    }
+
+    public static class StartGameHandler extends TextHandler {
+        @Override
+        public boolean handle(StartGamePacket packet) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.network.rewrite;
+
+import dev.waterdog.waterdogpe.network.rewrite.types.BlockPaletteRewrite;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkRewriteCacheTest {
+
+    /**
+     * Same as ENTRY_OVERHEAD of the cache.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    @Test
+    public void testKeyMatchesSameDataAndRewrite() {
+        ChunkRewriteCache cache = new ChunkRewriteCache(1024 * 1024);
+        byte[] rewritten = new byte[]{4, 5, 6};
+        cache.put(cache.createKey(new byte[]{1, 2, 3}, 1, BlockPaletteRewrite.BLOCK_EQUAL), rewritten);
+
+        // Key is created from content, not from identity of the array
+        assertSame(rewritten, cache.get(cache.createKey(new byte[]{1, 2, 3}, 1, BlockPaletteRewrite.BLOCK_EQUAL)));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testKeyDiffersByDataRewriteAndSubChunks() {
+        ChunkRewriteCache cache = new ChunkRewriteCache(1024 * 1024);
+        cache.put(cache.createKey(new byte[]{1, 2, 3}, 1, BlockPaletteRewrite.BLOCK_EQUAL), new byte[]{4, 5, 6});
+
+        assertNull(cache.get(cache.createKey(new byte[]{1, 2, 4}, 1, BlockPaletteRewrite.BLOCK_EQUAL)));
+        assertNull(cache.get(cache.createKey(new byte[]{1, 2, 3}, 2, BlockPaletteRewrite.BLOCK_EQUAL)));
+        assertNull(cache.get(cache.createKey(new byte[]{1, 2, 3}, 1, null)));
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        ChunkRewriteCache cache = new ChunkRewriteCache(2 * (100 + ENTRY_OVERHEAD));
+        ChunkRewriteCache.Key first = cache.createKey(new byte[]{1}, 1, null);
+        ChunkRewriteCache.Key second = cache.createKey(new byte[]{2}, 1, null);
+        ChunkRewriteCache.Key third = cache.createKey(new byte[]{3}, 1, null);
+
+        cache.put(first, new byte[100]);
+        cache.put(second, new byte[100]);
+        assertNotNull(cache.get(first));
+        cache.put(third, new byte[100]);
+
+        assertNotNull(cache.get(first));
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(third));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * (100 + ENTRY_OVERHEAD), cache.getSize());
+    }
+
+    @Test
+    public void testEntryBiggerThanLimitIsNotCached() {
+        ChunkRewriteCache cache = new ChunkRewriteCache(100);
+        ChunkRewriteCache.Key key = cache.createKey(new byte[]{1}, 1, null);
+        cache.put(key, new byte[100]);
+
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testReplacedEntryIsNotCountedTwice() {
+        ChunkRewriteCache cache = new ChunkRewriteCache(1024);
+        ChunkRewriteCache.Key key = cache.createKey(new byte[]{1}, 1, null);
+        cache.put(key, new byte[100]);
+        cache.put(key, new byte[50]);
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(50 + ENTRY_OVERHEAD, cache.getSize());
+    }
+}
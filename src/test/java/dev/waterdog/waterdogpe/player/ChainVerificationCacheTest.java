@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.player;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.nimbusds.jose.jwk.Curve;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChainVerificationCacheTest {
+
+    @Test
+    public void testSameChainIsCached() throws Exception {
+        ChainVerificationCache cache = new ChainVerificationCache(16, 3600);
+        KeyPair pair = createKeyPair();
+        JsonArray chain = createChain(pair, now() - 60, now() + 3600);
+
+        HandshakeUtils.VerifiedChain verified = cache.verify(chain);
+        assertFalse(verified.isXboxAuthed());
+        assertArrayEquals(pair.getPublic().getEncoded(), verified.getIdentityPublicKey().getEncoded());
+
+        assertSame(verified, cache.verify(chain.deepCopy()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testDifferentChainIsNotMatched() throws Exception {
+        ChainVerificationCache cache = new ChainVerificationCache(16, 3600);
+        KeyPair pair = createKeyPair();
+        cache.verify(createChain(pair, now() - 60, now() + 3600));
+        cache.verify(createChain(pair, now() - 60, now() + 3600));
+
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void testExpiredChainIsNotCached() throws Exception {
+        ChainVerificationCache cache = new ChainVerificationCache(16, 3600);
+        JsonArray chain = createChain(createKeyPair(), now() - 7200, now() - 60);
+        cache.verify(chain);
+        cache.verify(chain);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testNotYetValidChainIsNotCached() throws Exception {
+        ChainVerificationCache cache = new ChainVerificationCache(16, 3600);
+        JsonArray chain = createChain(createKeyPair(), now() + 600, now() + 3600);
+        cache.verify(chain);
+        cache.verify(chain);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testValidityOfChainIsIntersectionOfTokens() throws Exception {
+        KeyPair root = createKeyPair();
+        KeyPair identity = createKeyPair();
+        JsonArray chain = new JsonArray();
+        chain.add(createToken(root, identity, 100, 5000));
+        chain.add(createToken(identity, identity, 200, 4000));
+
+        HandshakeUtils.VerifiedChain verified = HandshakeUtils.verifyChain(chain);
+        assertEquals(200, verified.getNotBefore());
+        assertEquals(4000, verified.getExpiration());
+        assertArrayEquals(identity.getPublic().getEncoded(), verified.getIdentityPublicKey().getEncoded());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedChainIsEvicted() throws Exception {
+        ChainVerificationCache cache = new ChainVerificationCache(1, 3600);
+        KeyPair pair = createKeyPair();
+        JsonArray first = createChain(pair, now() - 60, now() + 3600);
+        cache.verify(first);
+        cache.verify(createChain(pair, now() - 60, now() + 3600));
+        cache.verify(first);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        ChainVerificationCache cache = new ChainVerificationCache(16, 0);
+        JsonArray chain = createChain(createKeyPair(), now() - 60, now() + 3600);
+        assertFalse(cache.isEnabled());
+
+        assertNotSame(cache.verify(chain), cache.verify(chain));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(Curve.P_384.toECParameterSpec());
+        return generator.generateKeyPair();
+    }
+
+    private static JsonArray createChain(KeyPair pair, long notBefore, long expiration) {
+        JsonArray chain = new JsonArray();
+        chain.add(createToken(pair, pair, notBefore, expiration));
+        return chain;
+    }
+
+    private static String createToken(KeyPair signer, KeyPair identity, long notBefore, long expiration) {
+        JsonObject extraData = new JsonObject();
+        extraData.addProperty("displayName", "Steve");
+        extraData.addProperty("identity", UUID.randomUUID().toString());
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("nbf", notBefore);
+        payload.addProperty("exp", expiration);
+        payload.add("extraData", extraData);
+        payload.addProperty("identityPublicKey", Base64.getEncoder().encodeToString(identity.getPublic().getEncoded()));
+        return HandshakeUtils.encodeJWT(signer, payload).serialize();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.waterdogpe.utils.types;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UUIDSetTest {
+
+    @Test
+    public void testAddContainsRemove() {
+        UUIDSet set = new UUIDSet();
+        UUID uuid = UUID.randomUUID();
+
+        assertTrue(set.add(uuid));
+        assertFalse(set.add(uuid));
+        assertTrue(set.contains(uuid));
+        assertTrue(set.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+        assertFalse(set.contains("not an uuid"));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(uuid));
+        assertFalse(set.remove(uuid));
+        assertFalse(set.contains(uuid));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testNilUuid() {
+        UUIDSet set = new UUIDSet();
+        UUID nil = new UUID(0, 0);
+
+        assertTrue(set.add(nil));
+        assertFalse(set.add(nil));
+        assertTrue(set.contains(nil));
+        assertEquals(1, set.size());
+        assertEquals(nil, set.iterator().next());
+
+        assertTrue(set.remove(nil));
+        assertFalse(set.contains(nil));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testMatchesHashSet() {
+        // Small key space makes entries collide, remove and re-add often, so shifting of probe sequences is exercised
+        Random random = new Random(42);
+        UUIDSet set = new UUIDSet();
+        Set<UUID> expected = new HashSet<>();
+
+        for (int i = 0; i < 100000; i++) {
+            UUID uuid = new UUID(random.nextInt(8), random.nextInt(64));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(uuid), set.remove(uuid));
+            } else {
+                assertEquals(expected.add(uuid), set.add(uuid));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+
+        for (int most = 0; most < 8; most++) {
+            for (int least = 0; least < 64; least++) {
+                UUID uuid = new UUID(most, least);
+                assertEquals(expected.contains(uuid), set.contains(uuid), uuid.toString());
+            }
+        }
+        assertEquals(expected, new HashSet<>(set));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        // Collisions in small tables move entries across the end of the table when other entries are removed
+        Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            UUIDSet set = new UUIDSet();
+            Set<UUID> expected = new HashSet<>();
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(random.nextInt(4), random.nextInt(16));
+                set.add(uuid);
+                expected.add(uuid);
+            }
+
+            int divisor = 1 + random.nextInt(3);
+            set.removeIf(uuid -> uuid.getLeastSignificantBits() % divisor == 0);
+            expected.removeIf(uuid -> uuid.getLeastSignificantBits() % divisor == 0);
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected, new HashSet<>(set));
+            for (UUID uuid : expected) {
+                assertTrue(set.contains(uuid));
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorRemoveAll() {
+        UUIDSet set = new UUIDSet();
+        set.add(new UUID(0, 0));
+        for (int i = 1; i < 100; i++) {
+            set.add(new UUID(i, i));
+        }
+
+        int visited = 0;
+        Iterator<UUID> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            visited++;
+        }
+        assertEquals(100, visited);
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(new UUID(0, 0)));
+        assertFalse(set.contains(new UUID(1, 1)));
+    }
+
+    @Test
+    public void testGrowAndClear() {
+        UUIDSet set = new UUIDSet();
+        Set<UUID> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = UUID.randomUUID();
+            expected.add(uuid);
+            set.add(uuid);
+        }
+        assertEquals(expected, new HashSet<>(set));
+
+        long memoryUsage = set.getMemoryUsage();
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.iterator().hasNext());
+        assertTrue(set.getMemoryUsage() < memoryUsage);
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        UUIDSet set = new UUIDSet();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        set.add(first);
+        set.add(new UUID(0, 0));
+
+        UUIDSet copy = new UUIDSet(set);
+        copy.add(second);
+        set.remove(first);
+
+        assertEquals(3, copy.size());
+        assertTrue(copy.contains(first));
+        assertTrue(copy.contains(new UUID(0, 0)));
+        assertFalse(set.contains(second));
+        assertEquals(1, set.size());
+    }
+}